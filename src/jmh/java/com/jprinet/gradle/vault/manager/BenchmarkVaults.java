@@ -0,0 +1,86 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures shared by the benchmarks
+ */
+final class BenchmarkVaults {
+
+    static final String PASSPHRASE = "benchmark-passphrase";
+    private static final String PASSPHRASE_FILE = ".vault_passphrase";
+
+    private BenchmarkVaults() {
+    }
+
+    /**
+     * create a vault holding the secrets vault.secret.0 to vault.secret.(entries - 1)
+     *
+     * @param directory project directory
+     * @param format vault format (V1, V2, V3)
+     * @param entries number of secrets
+     *
+     * @return configuration bound to the vault, not initialized
+     */
+    static VaultConfiguration createVault(Path directory, String format, int entries) {
+        try {
+            Files.write(directory.resolve(PASSPHRASE_FILE), Collections.singletonList(PASSPHRASE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        newConfiguration(directory, format).getVaultManager().createVault();
+
+        VaultConfiguration configuration = newConfiguration(directory, format);
+        VaultTransaction transaction = configuration.getVaultManager().beginTransaction();
+        for (int i = 0; i < entries; i++) {
+            transaction.addSecret(getIdentifier(i), "secret-" + i);
+        }
+        transaction.commit();
+
+        return newConfiguration(directory, format);
+    }
+
+    /**
+     * @param directory project directory holding the vault
+     * @param format vault format (V1, V2, V3)
+     *
+     * @return initialized configuration, without service nor access check
+     */
+    static VaultConfiguration newConfiguration(Path directory, String format) {
+        VaultConfiguration configuration = new VaultConfiguration(directory.toFile());
+        configuration.vaultPassphraseFile = PASSPHRASE_FILE;
+        configuration.vaultFormat = format;
+        configuration.init(false);
+        return configuration;
+    }
+
+    /**
+     * @param index secret index
+     *
+     * @return identifier of the secret
+     */
+    static String getIdentifier(int index) {
+        return "vault.secret." + index;
+    }
+
+    /**
+     * delete a directory and its content
+     *
+     * @param directory directory to delete
+     */
+    static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single secret encryption/decryption
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionManagerBenchmark {
+
+    @Param({"16", "256"})
+    public int secretLength;
+
+    private EncryptionManager encryptionManager;
+    private String secret;
+    private String encryptedSecret;
+
+    @Setup
+    public void setUp() {
+        encryptionManager = new EncryptionManager(BenchmarkVaults.PASSPHRASE);
+
+        StringBuilder builder = new StringBuilder(secretLength);
+        for (int i = 0; i < secretLength; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        secret = builder.toString();
+        encryptedSecret = encryptionManager.encrypt(secret);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptionManager.encrypt(secret);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptionManager.decrypt(encryptedSecret);
+    }
+}
@@ -0,0 +1,64 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vault loading from disk, journal replay included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VaultLoadBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    @Param({"V1", "V2", "V3"})
+    public String format;
+
+    private Path directory;
+    private VaultManager vaultManager;
+    private String encryptedKey;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-load");
+        vaultManager = BenchmarkVaults.createVault(directory, format, entries).getVaultManager();
+        encryptedKey = vaultManager.encrypt(BenchmarkVaults.getIdentifier(entries / 2));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkVaults.delete(directory);
+    }
+
+    @Benchmark
+    public Map<String, String> getVaultContent() {
+        return vaultManager.getVaultContent();
+    }
+
+    @Benchmark
+    public String lookup() {
+        // no snapshot is ever loaded, so this is a point read
+        return vaultManager.lookup(encryptedKey);
+    }
+}
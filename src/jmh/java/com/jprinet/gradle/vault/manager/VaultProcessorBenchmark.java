@@ -0,0 +1,102 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Token substitution over a synthetic resource tree, templates being restored before each invocation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VaultProcessorBenchmark {
+
+    private static final int SECRETS = 1000;
+    private static final int DIRECTORIES = 10;
+    private static final int FILES_PER_DIRECTORY = 20;
+    private static final int LINES_PER_FILE = 200;
+
+    /**
+     * percentage of lines holding a token
+     */
+    @Param({"0", "10", "100"})
+    public int tokenDensity;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path directory;
+    private VaultConfiguration configuration;
+    private List<Path> files;
+    private List<byte[]> templates;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-processor");
+        BenchmarkVaults.createVault(directory, null, SECRETS);
+
+        files = new ArrayList<>();
+        templates = new ArrayList<>();
+        int token = 0;
+        for (int d = 0; d < DIRECTORIES; d++) {
+            Path conf = Files.createDirectories(directory.resolve("build").resolve("module" + d).resolve("conf"));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                StringBuilder template = new StringBuilder();
+                for (int l = 0; l < LINES_PER_FILE; l++) {
+                    template.append("key.").append(l).append('=');
+                    if ((l * 100) / LINES_PER_FILE < tokenDensity) {
+                        template.append("@@").append(BenchmarkVaults.getIdentifier(token++ % SECRETS)).append("@@");
+                    } else {
+                        template.append("plain-value-").append(l);
+                    }
+                    template.append('\n');
+                }
+                files.add(conf.resolve("file" + f + ".properties"));
+                templates.add(template.toString().getBytes("UTF-8"));
+            }
+        }
+
+        configuration = BenchmarkVaults.newConfiguration(directory, null);
+        configuration.parallelism = parallelism;
+        // a fresh manager per configuration, so load the vault once outside of the measurement
+        configuration.getVaultManager().resolve();
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreTemplates() throws IOException {
+        for (int i = 0; i < files.size(); i++) {
+            Files.write(files.get(i), templates.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkVaults.delete(directory);
+    }
+
+    @Benchmark
+    public void process() {
+        configuration.getVaultProcessor().process();
+    }
+}
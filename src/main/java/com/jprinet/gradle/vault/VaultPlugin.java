@@ -1,33 +1,69 @@
 package com.jprinet.gradle.vault;
 
 import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.manager.VaultFilter;
+import com.jprinet.gradle.vault.manager.VaultService;
+import com.jprinet.gradle.vault.task.AbstractVaultTask;
 import com.jprinet.gradle.vault.task.AddMissingSecretsTask;
 import com.jprinet.gradle.vault.task.AddSecretTask;
 import com.jprinet.gradle.vault.task.CreateVaultTask;
+import com.jprinet.gradle.vault.task.ExportSecretsTask;
+import com.jprinet.gradle.vault.task.ImportSecretsTask;
 import com.jprinet.gradle.vault.task.ProcessSecretsTask;
 import com.jprinet.gradle.vault.task.RemoveSecretTask;
+import com.jprinet.gradle.vault.task.RemoveSecretsTask;
 import com.jprinet.gradle.vault.task.RevealSecretTask;
+import com.jprinet.gradle.vault.task.VaultUsageTask;
+import com.jprinet.gradle.vault.task.WatchSecretsTask;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.AbstractCopyTask;
 
 public class VaultPlugin implements Plugin<Project> {
 
+    private static final String EXTENSION_NAME = "vault";
+    private static final String SERVICE_NAME = "vault";
+    private static final String FILTER_NAME = "VaultFilter";
+
     private static final String TASK_PROCESS_VAULT = "processSecrets";
+    private static final String TASK_WATCH_SECRETS = "watchSecrets";
     private static final String TASK_CREATE_VAULT = "createVault";
     private static final String TASK_ADD_SECRET = "addSecret";
     private static final String TASK_ADD_MISSING_SECRET = "addMissingSecrets";
     private static final String TASK_REMOVE_SECRET = "removeSecret";
     private static final String TASK_REVEAL_SECRET = "revealSecret";
+    private static final String TASK_IMPORT_SECRETS = "importSecrets";
+    private static final String TASK_EXPORT_SECRETS = "exportSecrets";
+    private static final String TASK_REMOVE_SECRETS = "removeSecrets";
+    private static final String TASK_VAULT_USAGE = "vaultUsage";
 
     @Override
     public void apply(Project project) {
-        project.getExtensions().create("vault", VaultConfigurationExtension.class);
-
-        project.getTasks().create(TASK_CREATE_VAULT, CreateVaultTask.class);
-        project.getTasks().create(TASK_ADD_SECRET, AddSecretTask.class);
-        project.getTasks().create(TASK_ADD_MISSING_SECRET, AddMissingSecretsTask.class);
-        project.getTasks().create(TASK_REMOVE_SECRET, RemoveSecretTask.class);
-        project.getTasks().create(TASK_REVEAL_SECRET, RevealSecretTask.class);
-        project.getTasks().create(TASK_PROCESS_VAULT, ProcessSecretsTask.class);
+        // one service for the whole build, shared by all projects applying the plugin
+        Provider<VaultService> service = project.getGradle().getSharedServices().registerIfAbsent(SERVICE_NAME, VaultService.class, spec -> { });
+
+        VaultConfigurationExtension extension = project.getExtensions().create(EXTENSION_NAME, VaultConfigurationExtension.class, project.getObjects(), project.getProjectDir(), service);
+
+        // copy filter, usable without import as filter(vault.filterProperties, VaultFilter)
+        project.getExtensions().getExtraProperties().set(FILTER_NAME, VaultFilter.class);
+        project.getTasks().withType(AbstractCopyTask.class).configureEach(task -> task.usesService(service));
+
+        // tasks are only created when requested
+        register(project, extension, service, TASK_CREATE_VAULT, CreateVaultTask.class);
+        register(project, extension, service, TASK_ADD_SECRET, AddSecretTask.class);
+        register(project, extension, service, TASK_ADD_MISSING_SECRET, AddMissingSecretsTask.class);
+        register(project, extension, service, TASK_REMOVE_SECRET, RemoveSecretTask.class);
+        register(project, extension, service, TASK_REVEAL_SECRET, RevealSecretTask.class);
+        register(project, extension, service, TASK_IMPORT_SECRETS, ImportSecretsTask.class);
+        register(project, extension, service, TASK_EXPORT_SECRETS, ExportSecretsTask.class);
+        register(project, extension, service, TASK_REMOVE_SECRETS, RemoveSecretsTask.class);
+        register(project, extension, service, TASK_PROCESS_VAULT, ProcessSecretsTask.class);
+        register(project, extension, service, TASK_WATCH_SECRETS, WatchSecretsTask.class);
+        register(project, extension, service, TASK_VAULT_USAGE, VaultUsageTask.class);
+    }
+
+    private <T extends AbstractVaultTask> void register(Project project, VaultConfigurationExtension extension, Provider<VaultService> service, String name, Class<T> type) {
+        project.getTasks().register(name, type, task -> task.configure(extension, service));
     }
-}
\ No newline at end of file
+}
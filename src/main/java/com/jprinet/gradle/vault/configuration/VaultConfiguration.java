@@ -0,0 +1,170 @@
+package com.jprinet.gradle.vault.configuration;
+
+import com.jprinet.gradle.vault.manager.IOManager;
+import com.jprinet.gradle.vault.manager.VaultManager;
+import com.jprinet.gradle.vault.manager.VaultProcessor;
+import com.jprinet.gradle.vault.manager.VaultService;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Execution context of a vault task, built from the task properties so that no Project is needed at execution time
+ */
+public class VaultConfiguration {
+
+    static final String DEFAULT_VAULT_FILE = ".vault";
+    static final String DEFAULT_VAULT_PASSPHRASE_FILE = ".vault_passphrase";
+    static final String DEFAULT_RESOURCE_PATH = "build";
+    static final String DEFAULT_RESOURCE_PATTERN = ".*/conf/.*.properties";
+    static final int DEFAULT_PARALLELISM = 1;
+    static final String DEFAULT_MISSING_SECRETS_FILE = ".vault_missing_secrets";
+    static final String DEFAULT_RESOLUTION_CACHE_DIRECTORY = ".gradle/vault-cache";
+    static final String DEFAULT_USAGE_INDEX_FILE = ".gradle/vault-usage.json";
+    static final String DEFAULT_SECRET_BACKEND = "file";
+    static final int DEFAULT_SECRET_BACKEND_TTL = 300;
+
+    // plugin configuration, relative paths being resolved against the base directory
+    public String vaultFile;
+    public String vaultPassphraseFile;
+    public String resourcePath;
+    public String resourcePattern;
+    // globs relative to the resource path, the resource pattern being used if there is no include
+    public List<String> resourceIncludes;
+    public List<String> resourceExcludes;
+    public Integer parallelism;
+    public String missingSecretsFile;
+    // null to keep the format of the existing vault
+    public String vaultFormat;
+    // null to keep the encryption of the existing vault
+    public String vaultEncryption;
+    public Boolean vaultJournal;
+    public Boolean resolutionCache;
+    public String resolutionCacheDirectory;
+    // token locations of the processed resources
+    public String usageIndexFile;
+    // file, or http for a HashiCorp Vault compatible KV secret at secretBackendUrl
+    public String secretBackend;
+    public String secretBackendUrl;
+    public String secretBackendTokenFile;
+    // seconds
+    public Integer secretBackendTtl;
+    // null to skip the processing report
+    public String reportFile;
+
+    private final Path baseDirectory;
+
+    private VaultService vaultService;
+
+    private VaultManager vaultManager;
+    private VaultProcessor vaultProcessor;
+    private IOManager ioManager;
+
+    /**
+     * @param baseDirectory directory relative paths are resolved against (project directory)
+     */
+    public VaultConfiguration(File baseDirectory) {
+        this.baseDirectory = baseDirectory.toPath().toAbsolutePath();
+    }
+
+    /**
+     * initialize context
+     */
+    public void init(boolean isVaultAccessProtected) {
+        // parameters
+        applyDefaults();
+
+        // managers
+        ioManager = new IOManager();
+        vaultManager = new VaultManager(this);
+        vaultProcessor = new VaultProcessor(this);
+
+        if (isVaultAccessProtected) {
+            vaultManager.assertVaultAccess();
+        }
+    }
+
+    /**
+     * set default values to unset parameters and resolve paths
+     */
+    public void applyDefaults() {
+        vaultFile = resolve(checkValue(vaultFile, DEFAULT_VAULT_FILE));
+        vaultPassphraseFile = resolve(checkValue(vaultPassphraseFile, DEFAULT_VAULT_PASSPHRASE_FILE));
+        resourcePath = resolve(checkValue(resourcePath, DEFAULT_RESOURCE_PATH));
+        resourcePattern = checkValue(resourcePattern, DEFAULT_RESOURCE_PATTERN);
+        parallelism = checkValue(parallelism, DEFAULT_PARALLELISM);
+        missingSecretsFile = resolve(checkValue(missingSecretsFile, DEFAULT_MISSING_SECRETS_FILE));
+        resolutionCacheDirectory = resolve(checkValue(resolutionCacheDirectory, DEFAULT_RESOLUTION_CACHE_DIRECTORY));
+        usageIndexFile = resolve(checkValue(usageIndexFile, DEFAULT_USAGE_INDEX_FILE));
+        secretBackend = checkValue(secretBackend, DEFAULT_SECRET_BACKEND);
+        secretBackendTtl = checkValue(secretBackendTtl, DEFAULT_SECRET_BACKEND_TTL);
+        if (secretBackendTokenFile != null) {
+            secretBackendTokenFile = resolve(secretBackendTokenFile);
+        }
+        if (reportFile != null) {
+            reportFile = resolve(reportFile);
+        }
+    }
+
+    /**
+     * @param path path, relative to the base directory or absolute
+     *
+     * @return absolute path
+     */
+    public String resolve(String path) {
+        return baseDirectory.resolve(path).toString();
+    }
+
+    /**
+     * @param path absolute path
+     *
+     * @return path relative to the base directory, as matched against the resource pattern
+     */
+    public String relativize(Path path) {
+        Path absolutePath = path.toAbsolutePath();
+        if (absolutePath.startsWith(baseDirectory)) {
+            return baseDirectory.relativize(absolutePath).toString();
+        }
+
+        return absolutePath.toString();
+    }
+
+    private String checkValue(String value, String defaultValue) {
+        if ((value == null) || value.isEmpty()) {
+            return defaultValue;
+        } else {
+            return value;
+        }
+    }
+
+    private Integer checkValue(Integer value, int defaultValue) {
+        if ((value == null) || value < 1) {
+            return defaultValue;
+        } else {
+            return value;
+        }
+    }
+
+    public VaultService getVaultService() {
+        return vaultService;
+    }
+
+    /**
+     * @param vaultService build service sharing loaded vaults between tasks, null to use a task local vault
+     */
+    public void setVaultService(VaultService vaultService) {
+        this.vaultService = vaultService;
+    }
+
+    public VaultManager getVaultManager() {
+        return vaultManager;
+    }
+
+    public VaultProcessor getVaultProcessor() {
+        return vaultProcessor;
+    }
+
+    public IOManager getIoManager() {
+        return ioManager;
+    }
+}
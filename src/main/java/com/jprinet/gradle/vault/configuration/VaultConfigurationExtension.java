@@ -1,63 +1,226 @@
 package com.jprinet.gradle.vault.configuration;
 
-import com.jprinet.gradle.vault.manager.IOManager;
 import com.jprinet.gradle.vault.manager.VaultManager;
-import com.jprinet.gradle.vault.manager.VaultProcessor;
+import com.jprinet.gradle.vault.manager.VaultService;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
 
+/**
+ * vault { } configuration block, values are lazily wired into the vault tasks
+ */
 public class VaultConfigurationExtension {
 
-    private static final String DEFAULT_VAULT_FILE = ".vault";
-    private static final String DEFAULT_VAULT_PASSPHRASE_FILE = ".vault_passphrase";
-    private static final String DEFAULT_RESOURCE_PATH = "build";
-    private static final String DEFAULT_RESOURCE_PATTERN = ".*/conf/.*.properties";
+    private final Property<String> vaultFile;
+    private final Property<String> vaultPassphraseFile;
+    private final Property<String> resourcePath;
+    private final Property<String> resourcePattern;
+    private final ListProperty<String> resourceIncludes;
+    private final ListProperty<String> resourceExcludes;
+    private final Property<Integer> parallelism;
+    private final Property<String> vaultFormat;
+    private final Property<String> vaultEncryption;
+    private final Property<Boolean> vaultJournal;
+    private final Property<Boolean> resolutionCache;
+    private final Property<String> secretBackend;
+    private final Property<String> secretBackendUrl;
+    private final Property<String> secretBackendTokenFile;
+    private final Property<Integer> secretBackendTtl;
 
-    // plugin configuration
-    public String vaultFile;
-    public String vaultPassphraseFile;
-    public String resourcePath;
-    public String resourcePattern;
+    private final File projectDirectory;
+    private final Provider<VaultService> vaultService;
+    private final ConfigurableFileCollection filterInputs;
 
-    private VaultManager vaultManager;
-    private VaultProcessor vaultProcessor;
-    private IOManager ioManager;
+    public VaultConfigurationExtension(ObjectFactory objects, File projectDirectory, Provider<VaultService> vaultService) {
+        this.projectDirectory = projectDirectory;
+        this.vaultService = vaultService;
+        vaultFile = objects.property(String.class);
+        vaultFile.set(VaultConfiguration.DEFAULT_VAULT_FILE);
+        vaultPassphraseFile = objects.property(String.class);
+        vaultPassphraseFile.set(VaultConfiguration.DEFAULT_VAULT_PASSPHRASE_FILE);
+        resourcePath = objects.property(String.class);
+        resourcePath.set(VaultConfiguration.DEFAULT_RESOURCE_PATH);
+        resourcePattern = objects.property(String.class);
+        resourcePattern.set(VaultConfiguration.DEFAULT_RESOURCE_PATTERN);
+        resourceIncludes = objects.listProperty(String.class);
+        resourceExcludes = objects.listProperty(String.class);
+        parallelism = objects.property(Integer.class);
+        parallelism.set(VaultConfiguration.DEFAULT_PARALLELISM);
+        vaultFormat = objects.property(String.class);
+        vaultEncryption = objects.property(String.class);
+        vaultJournal = objects.property(Boolean.class);
+        vaultJournal.set(false);
+        resolutionCache = objects.property(Boolean.class);
+        resolutionCache.set(false);
+        secretBackend = objects.property(String.class);
+        secretBackend.set(VaultConfiguration.DEFAULT_SECRET_BACKEND);
+        secretBackendUrl = objects.property(String.class);
+        secretBackendTokenFile = objects.property(String.class);
+        secretBackendTtl = objects.property(Integer.class);
+        secretBackendTtl.set(VaultConfiguration.DEFAULT_SECRET_BACKEND_TTL);
+        filterInputs = objects.fileCollection().from((Callable<List<File>>) () -> {
+            File vault = resolve(vaultFile.get());
+            return Arrays.asList(vault, new File(VaultManager.getVaultJournalFile(vault.getPath())));
+        });
+    }
 
-    /**
-     * initialize context
-     */
-    public void init(boolean isVaultAccessProtected) {
-        // parameters
-        vaultFile = checkValue(vaultFile, DEFAULT_VAULT_FILE);
-        vaultPassphraseFile = checkValue(vaultPassphraseFile, DEFAULT_VAULT_PASSPHRASE_FILE);
-        resourcePath = checkValue(resourcePath, DEFAULT_RESOURCE_PATH);
-        resourcePattern = checkValue(resourcePattern, DEFAULT_RESOURCE_PATTERN);
-
-        // managers
-        ioManager = new IOManager();
-        vaultManager = new VaultManager(this);
-        vaultProcessor = new VaultProcessor(this);
-
-        if (isVaultAccessProtected) {
-            vaultManager.assertVaultAccess();
-        }
+    public Property<String> getVaultFile() {
+        return vaultFile;
     }
 
-    private String checkValue(String value, String defaultValue) {
-        if ((value == null) || value.isEmpty()) {
-            return defaultValue;
-        } else {
-            return value;
-        }
+    public void setVaultFile(String vaultFile) {
+        this.vaultFile.set(vaultFile);
+    }
+
+    public Property<String> getVaultPassphraseFile() {
+        return vaultPassphraseFile;
+    }
+
+    public void setVaultPassphraseFile(String vaultPassphraseFile) {
+        this.vaultPassphraseFile.set(vaultPassphraseFile);
+    }
+
+    public Property<String> getResourcePath() {
+        return resourcePath;
+    }
+
+    public void setResourcePath(String resourcePath) {
+        this.resourcePath.set(resourcePath);
+    }
+
+    public Property<String> getResourcePattern() {
+        return resourcePattern;
+    }
+
+    public void setResourcePattern(String resourcePattern) {
+        this.resourcePattern.set(resourcePattern);
     }
 
-    public VaultManager getVaultManager() {
-        return vaultManager;
+    public ListProperty<String> getResourceIncludes() {
+        return resourceIncludes;
     }
 
-    public VaultProcessor getVaultProcessor() {
-        return vaultProcessor;
+    public void setResourceIncludes(List<String> resourceIncludes) {
+        this.resourceIncludes.set(resourceIncludes);
+    }
+
+    public ListProperty<String> getResourceExcludes() {
+        return resourceExcludes;
+    }
+
+    public void setResourceExcludes(List<String> resourceExcludes) {
+        this.resourceExcludes.set(resourceExcludes);
+    }
+
+    public Property<Integer> getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism.set(parallelism);
+    }
+
+    public Property<String> getVaultFormat() {
+        return vaultFormat;
+    }
+
+    public void setVaultFormat(String vaultFormat) {
+        this.vaultFormat.set(vaultFormat);
+    }
+
+    public Property<String> getVaultEncryption() {
+        return vaultEncryption;
+    }
+
+    public void setVaultEncryption(String vaultEncryption) {
+        this.vaultEncryption.set(vaultEncryption);
+    }
+
+    public Property<Boolean> getVaultJournal() {
+        return vaultJournal;
+    }
+
+    public void setVaultJournal(Boolean vaultJournal) {
+        this.vaultJournal.set(vaultJournal);
+    }
+
+    public Property<Boolean> getResolutionCache() {
+        return resolutionCache;
+    }
+
+    public void setResolutionCache(Boolean resolutionCache) {
+        this.resolutionCache.set(resolutionCache);
+    }
+
+    public Property<String> getSecretBackend() {
+        return secretBackend;
+    }
+
+    public void setSecretBackend(String secretBackend) {
+        this.secretBackend.set(secretBackend);
+    }
+
+    public Property<String> getSecretBackendUrl() {
+        return secretBackendUrl;
+    }
+
+    public void setSecretBackendUrl(String secretBackendUrl) {
+        this.secretBackendUrl.set(secretBackendUrl);
+    }
+
+    public Property<String> getSecretBackendTokenFile() {
+        return secretBackendTokenFile;
+    }
+
+    public void setSecretBackendTokenFile(String secretBackendTokenFile) {
+        this.secretBackendTokenFile.set(secretBackendTokenFile);
+    }
+
+    public Property<Integer> getSecretBackendTtl() {
+        return secretBackendTtl;
+    }
+
+    public void setSecretBackendTtl(Integer secretBackendTtl) {
+        this.secretBackendTtl.set(secretBackendTtl);
+    }
+
+    /**
+     * @return properties of the VaultFilter copy filter, e.g. filter(vault.filterProperties, VaultFilter)
+     */
+    public Map<String, Object> getFilterProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("baseDirectory", projectDirectory.getAbsolutePath());
+        properties.put("vaultFile", resolve(vaultFile.get()).getPath());
+        properties.put("vaultPassphraseFile", resolve(vaultPassphraseFile.get()).getPath());
+        properties.put("secretBackend", secretBackend.get());
+        properties.put("secretBackendTtl", secretBackendTtl.get());
+        if (secretBackendUrl.isPresent()) {
+            properties.put("secretBackendUrl", secretBackendUrl.get());
+        }
+        if (secretBackendTokenFile.isPresent()) {
+            properties.put("secretBackendTokenFile", resolve(secretBackendTokenFile.get()).getPath());
+        }
+        properties.put("vaultService", vaultService);
+        return properties;
+    }
+
+    /**
+     * @return vault files to declare as inputs of the tasks using the VaultFilter, so that they are rerun when the vault changes
+     */
+    public FileCollection getFilterInputs() {
+        return filterInputs;
     }
 
-    public IOManager getIoManager() {
-        return ioManager;
+    private File resolve(String path) {
+        return projectDirectory.toPath().resolve(path).toFile();
     }
 }
@@ -0,0 +1,205 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Passphrase based scheme: keys derived once with PBKDF2 and a per-vault salt, HMAC-SHA256 vault keys
+ * and AES/GCM values with a random nonce per entry.
+ * Values hold their identifier (4 bytes length, identifier, secret) as keys can't be reverted, and are bound to their key.
+ */
+final class AesGcmVaultCipher implements VaultCipher {
+
+    static final String NAME = "AES-GCM";
+
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int KDF_ITERATIONS = 310000;
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+    private static final String PARAMETERS_SEPARATOR = ":";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    // not valid UTF-8, so that no identifier is hashed to a derived key
+    private static final byte KEY_USAGE_PREFIX = (byte) 0xff;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String parameters;
+    private final SecretKeySpec encryptionKey;
+
+    // neither macs nor ciphers are thread safe
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(AesGcmVaultCipher::createCipher);
+
+    private AesGcmVaultCipher(String parameters, byte[] encryptionKey, byte[] macKey) {
+        this.parameters = parameters;
+        this.encryptionKey = new SecretKeySpec(encryptionKey, "AES");
+        SecretKeySpec macKeySpec = new SecretKeySpec(macKey, MAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> createMac(macKeySpec));
+
+        // fail fast if the algorithms are not available
+        mac.get();
+        cipher.get();
+    }
+
+    /**
+     * @param passphrase vault passphrase
+     *
+     * @return cipher with a fresh salt, for a new or re-encrypted vault
+     */
+    static AesGcmVaultCipher generate(String passphrase) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return create(passphrase, KDF_ALGORITHM + PARAMETERS_SEPARATOR + KDF_ITERATIONS + PARAMETERS_SEPARATOR + Base64.getEncoder().encodeToString(salt));
+    }
+
+    /**
+     * derive the keys, which is purposely slow
+     *
+     * @param passphrase vault passphrase
+     * @param parameters parameters read from the vault (algorithm:iterations:salt)
+     *
+     * @return cipher
+     */
+    static AesGcmVaultCipher create(String passphrase, String parameters) {
+        String[] tokens = parameters.split(PARAMETERS_SEPARATOR);
+        if (tokens.length != 3) {
+            throw new IllegalStateException("invalid vault key derivation parameters");
+        }
+
+        try {
+            PBEKeySpec spec = new PBEKeySpec(String.valueOf(passphrase).toCharArray(), Base64.getDecoder().decode(tokens[2]), Integer.parseInt(tokens[1]), KEY_LENGTH * 2 * 8);
+            byte[] keys = SecretKeyFactory.getInstance(tokens[0]).generateSecret(spec).getEncoded();
+            spec.clearPassword();
+
+            AesGcmVaultCipher vaultCipher = new AesGcmVaultCipher(parameters, Arrays.copyOfRange(keys, 0, KEY_LENGTH), Arrays.copyOfRange(keys, KEY_LENGTH, KEY_LENGTH * 2));
+            Arrays.fill(keys, (byte) 0);
+            return vaultCipher;
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("unable to derive vault keys", e);
+        }
+    }
+
+    private static Mac createMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to initialise encryption", e);
+        }
+    }
+
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to initialise encryption", e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String encryptKey(String identifier) {
+        return Base64.getEncoder().encodeToString(mac.get().doFinal(identifier.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String encryptValue(String identifier, String value) {
+        byte[] identifierAsBytes = identifier.getBytes(StandardCharsets.UTF_8);
+        byte[] valueAsBytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer plaintext = ByteBuffer.allocate(4 + identifierAsBytes.length + valueAsBytes.length);
+        plaintext.putInt(identifierAsBytes.length).put(identifierAsBytes).put(valueAsBytes);
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        try {
+            Cipher encryptionCipher = cipher.get();
+            encryptionCipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_LENGTH, nonce));
+            encryptionCipher.updateAAD(encryptKey(identifier).getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = encryptionCipher.doFinal(plaintext.array());
+
+            byte[] result = Arrays.copyOf(nonce, NONCE_LENGTH + encrypted.length);
+            System.arraycopy(encrypted, 0, result, NONCE_LENGTH, encrypted.length);
+            return Base64.getEncoder().encodeToString(result);
+        } catch (GeneralSecurityException e) {
+            cipher.remove();
+            throw new IllegalStateException("unable to encrypt", e);
+        } finally {
+            Arrays.fill(plaintext.array(), (byte) 0);
+        }
+    }
+
+    @Override
+    public String decryptValue(String key, String encryptedValue) {
+        return decryptEntry(key, encryptedValue).getValue();
+    }
+
+    @Override
+    public Map.Entry<String, String> decryptEntry(String key, String encryptedValue) {
+        try {
+            byte[] encrypted = Base64.getDecoder().decode(encryptedValue);
+            if (encrypted.length < NONCE_LENGTH) {
+                throw new IllegalStateException("unable to decrypt");
+            }
+
+            Cipher decryptionCipher = cipher.get();
+            decryptionCipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_LENGTH, encrypted, 0, NONCE_LENGTH));
+            decryptionCipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer plaintext = ByteBuffer.wrap(decryptionCipher.doFinal(encrypted, NONCE_LENGTH, encrypted.length - NONCE_LENGTH));
+
+            int identifierLength = plaintext.getInt();
+            if (identifierLength < 0 || identifierLength > plaintext.remaining()) {
+                throw new IllegalStateException("unable to decrypt");
+            }
+            String identifier = new String(plaintext.array(), 4, identifierLength, StandardCharsets.UTF_8);
+            String value = new String(plaintext.array(), 4 + identifierLength, plaintext.remaining() - identifierLength, StandardCharsets.UTF_8);
+            Arrays.fill(plaintext.array(), (byte) 0);
+
+            // the value must belong to the entry it is stored in
+            if (!MessageDigest.isEqual(encryptKey(identifier).getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8))) {
+                throw new IllegalStateException("unable to decrypt");
+            }
+
+            return new AbstractMap.SimpleImmutableEntry<>(identifier, value);
+        } catch (GeneralSecurityException e) {
+            cipher.remove();
+            throw new IllegalStateException("unable to decrypt", e);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IllegalStateException("unable to decrypt", e);
+        }
+    }
+
+    @Override
+    public byte[] deriveKey(String usage) {
+        Mac keyMac = mac.get();
+        keyMac.update(KEY_USAGE_PREFIX);
+        return keyMac.doFinal(usage.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,73 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * V1 format: a single Base64 line wrapping encKey---encValue lines
+ */
+final class Base64VaultFormat implements VaultFormat {
+
+    static final String VERSION = "V1.0";
+
+    private static final String VAULT_SEPARATOR = "---";
+
+    private final IOManager ioManager;
+
+    Base64VaultFormat(IOManager ioManager) {
+        this.ioManager = ioManager;
+    }
+
+    @Override
+    public String getVersion() {
+        return VERSION;
+    }
+
+    /**
+     * V1 is the fallback format, any vault not recognized by another format is considered as V1
+     */
+    @Override
+    public boolean isFormatOf(String vaultFile) {
+        return true;
+    }
+
+    @Override
+    public Map<String, String> read(String vaultFile) {
+        List<String> content = ioManager.loadFile(vaultFile, true);
+        if (content != null) {
+            return content.stream()
+                          .map(this::parse)
+                          .filter(Objects::nonNull)
+                          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        }
+
+        return null;
+    }
+
+    private Map.Entry<String, String> parse(String line) {
+        String[] tokens = line.split(VAULT_SEPARATOR);
+        if (tokens.length == 2) {
+            return new AbstractMap.SimpleEntry<>(tokens[0], tokens[1]);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void write(String vaultFile, Map<String, String> content) {
+        ioManager.saveFileAtomically(Paths.get(vaultFile), ioManager.toBase64(format(content)));
+    }
+
+    private List<String> format(Map<String, String> content) {
+        List<String> output = new ArrayList<>();
+        for (Map.Entry<String, String> entry : content.entrySet()) {
+            output.add(entry.getKey() + VAULT_SEPARATOR + entry.getValue());
+        }
+        return output;
+    }
+}
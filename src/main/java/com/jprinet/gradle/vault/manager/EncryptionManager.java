@@ -7,40 +7,140 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Map;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
-final class EncryptionManager {
+/**
+ * Legacy scheme: AES/CBC with a constant key and IV, the passphrase being appended to every plaintext
+ */
+final class EncryptionManager implements VaultCipher {
+
+    static final String NAME = "LEGACY";
 
     // we need to reuse the same key over time to compute the same encryption/decryption
     private static final byte[] keyAsBytes = new byte[]{122, -116, -7, -6, -102, -52, -4, 34, 77, -109, 111, 99, -102, -126, -124, 76};
     private static final byte[] initialisationVectorAsBytes = new byte[]{-116, -7, -6, -102, -52, -4, 34, 77, -109, 111, 99, -102, -126, -124, 76, 122};
 
     private static final String SALT = "pepper";
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    // same cost as the AES-GCM scheme, the constant salt being no weaker than the constant key of the entries
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int KDF_ITERATIONS = 310000;
+    private static final String KDF_SALT = NAME;
+    private static final int KEY_LENGTH = 256;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final Key AES_KEY = new SecretKeySpec(keyAsBytes, "AES");
+    private static final IvParameterSpec IV = new IvParameterSpec(initialisationVectorAsBytes);
+
+    // ciphers are not thread safe, each thread gets its own instances initialised once as doFinal resets them
+    private final ThreadLocal<Cipher> encryptionCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.ENCRYPT_MODE));
+    private final ThreadLocal<Cipher> decryptionCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.DECRYPT_MODE));
 
     private final String passphrase;
-    private final Key aesKey;
-    private final IvParameterSpec iv;
-    private final Cipher cipher;
+    private final byte[] suffix;
+    // derived on first use, as for the other schemes the key derivation is purposely slow
+    private byte[] derivationKey;
 
     EncryptionManager(String passphrase) {
+        this.passphrase = passphrase;
+        this.suffix = (SALT + passphrase).getBytes(StandardCharsets.UTF_8);
+
+        // fail fast if the algorithm is not available
+        encryptionCipher.get();
+    }
+
+    private static Cipher createCipher(int mode) {
         try {
-            this.passphrase = passphrase;
-            this.aesKey = new SecretKeySpec(keyAsBytes, "AES");
-            this.iv = new IvParameterSpec(initialisationVectorAsBytes);
-            this.cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, AES_KEY, IV);
+            return cipher;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
             throw new IllegalStateException("unable to initialise encryption", e);
         }
     }
 
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getParameters() {
+        return null;
+    }
+
+    @Override
+    public String encryptKey(String identifier) {
+        return encrypt(identifier);
+    }
+
+    @Override
+    public String encryptValue(String identifier, String value) {
+        return encrypt(value);
+    }
+
+    @Override
+    public String decryptValue(String key, String encryptedValue) {
+        return decrypt(encryptedValue);
+    }
+
+    @Override
+    public Map.Entry<String, String> decryptEntry(String key, String encryptedValue) {
+        return new AbstractMap.SimpleImmutableEntry<>(decrypt(key), decrypt(encryptedValue));
+    }
+
+    @Override
+    public synchronized byte[] deriveKey(String usage) {
+        if (derivationKey == null) {
+            if (passphrase == null || passphrase.isEmpty()) {
+                throw new IllegalStateException("unable to derive key without passphrase");
+            }
+
+            PBEKeySpec spec = new PBEKeySpec(passphrase.toCharArray(), KDF_SALT.getBytes(StandardCharsets.UTF_8), KDF_ITERATIONS, KEY_LENGTH);
+            try {
+                derivationKey = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+            } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+                throw new IllegalStateException("unable to derive key", e);
+            } finally {
+                spec.clearPassword();
+            }
+        }
+
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(derivationKey, MAC_ALGORITHM));
+            return mac.doFinal(usage.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException("unable to derive key", e);
+        }
+    }
+
+    /**
+     * forget the derived key
+     */
+    synchronized void wipe() {
+        if (derivationKey != null) {
+            Arrays.fill(derivationKey, (byte) 0);
+            derivationKey = null;
+        }
+    }
+
     /**
      * encrypt a secret
      *
@@ -49,11 +149,15 @@ final class EncryptionManager {
      * @return encrypted secret
      */
     String encrypt(String secret) {
+        byte[] secretAsBytes = secret.getBytes(StandardCharsets.UTF_8);
+        byte[] salted = Arrays.copyOf(secretAsBytes, secretAsBytes.length + suffix.length);
+        System.arraycopy(suffix, 0, salted, secretAsBytes.length, suffix.length);
+
         try {
-            cipher.init(Cipher.ENCRYPT_MODE, aesKey, iv);
-            byte[] encrypted = cipher.doFinal((secret + SALT + passphrase).getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = encryptionCipher.get().doFinal(salted);
             return Base64.getEncoder().encodeToString(encrypted);
-        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            encryptionCipher.remove();
             throw new IllegalStateException("unable to encrypt", e);
         }
     }
@@ -67,22 +171,32 @@ final class EncryptionManager {
      */
     String decrypt(String encryptedSecret) {
         try {
-            cipher.init(Cipher.DECRYPT_MODE, aesKey, iv);
             byte[] decodeBase64 = Base64.getDecoder().decode(encryptedSecret);
-            byte[] decrypted = cipher.doFinal(decodeBase64);
-            String decryptedAsString = new String(decrypted, StandardCharsets.UTF_8);
-            if (decryptedAsString.endsWith(SALT + passphrase)) {
-                decryptedAsString = decryptedAsString.substring(0, decryptedAsString.length() - SALT.length() - passphrase.length());
-            } else {
+            byte[] decrypted = decryptionCipher.get().doFinal(decodeBase64);
+            int secretLength = decrypted.length - suffix.length;
+            if (secretLength < 0 || !endsWithSuffix(decrypted, secretLength)) {
                 throw new IllegalStateException("unable to decrypt");
             }
 
-            return decryptedAsString;
-        } catch (IllegalArgumentException | InvalidKeyException | IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
+            return new String(decrypted, 0, secretLength, StandardCharsets.UTF_8);
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            decryptionCipher.remove();
+            throw new IllegalStateException("unable to decrypt", e);
+        } catch (IllegalArgumentException e) {
             throw new IllegalStateException("unable to decrypt", e);
         }
     }
 
+    private boolean endsWithSuffix(byte[] decrypted, int offset) {
+        for (int i = 0; i < suffix.length; i++) {
+            if (decrypted[offset + i] != suffix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Key generator used once to initialise the aes key
      */
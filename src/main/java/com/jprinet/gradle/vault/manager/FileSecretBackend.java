@@ -0,0 +1,39 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secrets read from the local vault file, only the requested entries being decrypted
+ */
+final class FileSecretBackend implements SecretBackend {
+
+    static final String NAME = "file";
+
+    private final VaultManager vaultManager;
+
+    FileSecretBackend(VaultManager vaultManager) {
+        this.vaultManager = vaultManager;
+    }
+
+    @Override
+    public Map<String, String> fetch(Collection<String> identifiers, ProcessingMetrics metrics) {
+        // the index is reused (per build when shared) if the vault did not change
+        SecretIndex secrets = vaultManager.resolve(metrics);
+
+        long start = System.nanoTime();
+        Map<String, String> values = new HashMap<>(identifiers.size() * 2);
+        for (String identifier : identifiers) {
+            String value = secrets.get(identifier);
+            if (value != null) {
+                values.put(identifier, value);
+            }
+        }
+        if (metrics != null) {
+            ProcessingMetrics.stop(metrics.decryptTime, start);
+        }
+
+        return values;
+    }
+}
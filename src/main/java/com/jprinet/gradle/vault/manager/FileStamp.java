@@ -0,0 +1,35 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * Modification time and size of a file, used to detect changes without reading it
+ */
+final class FileStamp {
+
+    private final FileTime lastModifiedTime;
+    private final long size;
+
+    /**
+     * @param attributes file attributes, null if the file does not exist
+     */
+    FileStamp(BasicFileAttributes attributes) {
+        this.lastModifiedTime = attributes != null ? attributes.lastModifiedTime() : null;
+        this.size = attributes != null ? attributes.size() : -1L;
+    }
+
+    /**
+     * @param attributes current file attributes, null if the file does not exist
+     *
+     * @return true if mtime and size are unchanged
+     */
+    boolean isUpToDate(BasicFileAttributes attributes) {
+        if (attributes == null) {
+            return lastModifiedTime == null;
+        }
+
+        return Objects.equals(lastModifiedTime, attributes.lastModifiedTime()) && size == attributes.size();
+    }
+}
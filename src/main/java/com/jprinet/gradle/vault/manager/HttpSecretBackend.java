@@ -0,0 +1,186 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Secrets read over HTTP from a key/value secret compatible with the HashiCorp Vault KV API (v2, v1 being accepted as well).
+ * The whole secret is fetched in a single request and kept in memory until its TTL expires, so that a build makes one round trip
+ * whatever the number of tokens. @@vault.KEY@@ is resolved from the KEY field of the secret.
+ */
+final class HttpSecretBackend implements SecretBackend {
+
+    static final String NAME = "http";
+
+    private static final String TOKEN_HEADER = "X-Vault-Token";
+    private static final String KEY_PREFIX = TokenScanner.TOKEN_PREFIX + ".";
+    private static final String DATA_FIELD = "data";
+    private static final String METADATA_FIELD = "metadata";
+    private static final int TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final String TOKEN_DIGEST_ALGORITHM = "SHA-256";
+
+    private final String url;
+    private final String token;
+    private final String cacheKey;
+    private final long ttlNanos;
+    private final VaultState vaultState;
+
+    /**
+     * @param url secret URL, e.g. http://127.0.0.1:8200/v1/secret/data/my-app
+     * @param token access token
+     * @param ttlSeconds time the fetched secrets are reused for
+     * @param vaultState state the fetched secrets are kept in, shared by the build when possible
+     */
+    HttpSecretBackend(String url, String token, int ttlSeconds, VaultState vaultState) {
+        this.url = url;
+        this.token = token;
+        // a secret is only reused by the same credentials, the token being digested so as not to keep it in the state
+        this.cacheKey = url + "#" + IOManager.toHex(digest(token));
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.vaultState = vaultState;
+    }
+
+    @Override
+    public Map<String, String> fetch(Collection<String> identifiers, ProcessingMetrics metrics) {
+        Map<String, String> secret = getSecret(metrics);
+
+        Map<String, String> values = new HashMap<>(identifiers.size() * 2);
+        for (String identifier : identifiers) {
+            String key = identifier.startsWith(KEY_PREFIX) ? identifier.substring(KEY_PREFIX.length()) : identifier;
+            String value = secret.get(key);
+            if (value != null) {
+                values.put(identifier, value);
+            }
+        }
+
+        return values;
+    }
+
+    private Map<String, String> getSecret(ProcessingMetrics metrics) {
+        synchronized (vaultState) {
+            CachedSecret cachedSecret = vaultState.remoteSecrets.get(cacheKey);
+            if (cachedSecret != null && System.nanoTime() - cachedSecret.fetchTime < ttlNanos) {
+                if (metrics != null) {
+                    metrics.cacheHits.increment();
+                }
+                return cachedSecret.values;
+            }
+
+            long start = System.nanoTime();
+            Map<String, String> values = request();
+            vaultState.remoteSecrets.put(cacheKey, new CachedSecret(values, start));
+            if (metrics != null) {
+                ProcessingMetrics.stop(metrics.decryptTime, start);
+            }
+
+            return values;
+        }
+    }
+
+    private static byte[] digest(String token) {
+        try {
+            return MessageDigest.getInstance(TOKEN_DIGEST_ALGORITHM).digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("unable to digest secret backend token", e);
+        }
+    }
+
+    private Map<String, String> request() {
+        try {
+            // connections are kept alive and reused by HttpURLConnection as long as bodies are fully read and closed
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setRequestProperty(TOKEN_HEADER, token);
+            connection.setRequestProperty("Accept", "application/json");
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                readFully(connection.getErrorStream());
+                return new HashMap<>();
+            } else if (status != HttpURLConnection.HTTP_OK) {
+                readFully(connection.getErrorStream());
+                throw new IllegalStateException("unable to read secrets from " + url + ", HTTP status " + status);
+            }
+
+            return parse(readFully(connection.getInputStream()));
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read secrets from " + url, e);
+        }
+    }
+
+    private Map<String, String> parse(String body) {
+        Object data;
+        try {
+            data = getField(Json.parse(body), DATA_FIELD);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("unexpected response from " + url, e);
+        }
+
+        // KV v2 wraps the fields with their metadata
+        Object fields = getField(data, METADATA_FIELD) != null ? getField(data, DATA_FIELD) : data;
+        if (!(fields instanceof Map)) {
+            throw new IllegalStateException("unexpected response from " + url + ", no secret data");
+        }
+
+        Map<String, String> values = new HashMap<>();
+        ((Map<?, ?>) fields).forEach((key, value) -> {
+            if (value != null) {
+                values.put(String.valueOf(key), Json.toText(value));
+            }
+        });
+
+        return values;
+    }
+
+    private static Object getField(Object object, String field) {
+        return object instanceof Map ? ((Map<?, ?>) object).get(field) : null;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Secret fields fetched at a given time
+     */
+    static final class CachedSecret {
+
+        private final Map<String, String> values;
+        private final long fetchTime;
+
+        private CachedSecret(Map<String, String> values, long fetchTime) {
+            this.values = values;
+            this.fetchTime = fetchTime;
+        }
+
+        /**
+         * drop the plaintext fields
+         */
+        void wipe() {
+            values.clear();
+        }
+    }
+}
@@ -2,24 +2,50 @@ package com.jprinet.gradle.vault.manager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 public class IOManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IOManager.class);
 
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
     /**
      * Create a file
      *
@@ -40,7 +66,7 @@ public class IOManager {
     }
 
     /**
-     * Update a file
+     * Update a file, content being atomically swapped
      *
      * @param filename name of the file to update
      * @param content file content
@@ -52,13 +78,381 @@ public class IOManager {
         }
 
         if (isBase64Encoded) {
-            saveFileInternal(filename, toBase64(content));
+            saveFileAtomically(Paths.get(filename), toBase64(content));
         } else {
-            saveFileInternal(filename, content);
+            saveFileAtomically(Paths.get(filename), content);
+        }
+    }
+
+    /**
+     * Atomically replace a file, content being written to a temporary file renamed over the target
+     *
+     * @param path file to replace
+     * @param content file content
+     */
+    void saveFileAtomically(Path path, List<String> content) {
+        writeFileAtomically(path, out -> {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            content.forEach(writer::println);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Atomically write a file, content being written to a temporary file renamed over the target
+     *
+     * @param path file to write, created if missing
+     * @param contentWriter content writer
+     */
+    void writeFileAtomically(Path path, ContentWriter contentWriter) {
+        Path directory = path.toAbsolutePath().getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, path.getFileName().toString(), TMP_FILE_SUFFIX);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                contentWriter.write(out);
+                out.flush();
+                // the content must be on disk before the rename makes it visible, or a crash may leave an empty file
+                channel.force(true);
+            }
+            if (Files.exists(path)) {
+                copyPermissions(path, tmp);
+            }
+            moveAtomically(tmp, path);
+            syncDirectory(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to save " + path, e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Durably append lines to a file, the file being created if missing
+     *
+     * @param filename file to append to
+     * @param lines lines to append
+     */
+    void appendToFile(String filename, List<String> lines) {
+        StringBuilder content = new StringBuilder();
+        lines.forEach(line -> content.append(line).append('\n'));
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > 0) {
+                // a previous append torn by a crash must not swallow the first new line
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') {
+                    content.insert(0, '\n');
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to append to " + filename, e);
+        }
+    }
+
+    /**
+     * Durably cut a file to the given size
+     *
+     * @param filename file to truncate
+     * @param size size to keep
+     */
+    void truncateFile(String filename, long size) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to truncate " + filename, e);
+        }
+    }
+
+    /**
+     * Delete a file if it exists
+     *
+     * @param filename file to delete
+     */
+    void deleteFile(String filename) {
+        try {
+            Files.deleteIfExists(Paths.get(filename));
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to delete " + filename, e);
+        }
+    }
+
+    /**
+     * @param files files to digest, missing ones being skipped
+     *
+     * @return SHA-256 digest of the concatenated files
+     */
+    byte[] digest(List<Path> files) {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        for (Path file : files) {
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("unable to read " + file, e);
+            }
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * @param content content to digest
+     *
+     * @return SHA-256 digest
+     */
+    byte[] digest(byte[] content) {
+        return createDigest().digest(content);
+    }
+
+    /**
+     * @param bytes bytes to format
+     *
+     * @return lowercase hexadecimal representation
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return new SHA-256 digest
+     */
+    MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("unable to digest", e);
+        }
+    }
+
+    /**
+     * @param path file to read
+     *
+     * @return file content
+     */
+    byte[] readBytes(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read " + path, e);
+        }
+    }
+
+    /**
+     * Stream a file line by line, without loading it
+     *
+     * @param path file to read
+     * @param action called with each line
+     */
+    void forEachLine(Path path, Consumer<String> action) {
+        try (InputStream in = Files.newInputStream(path)) {
+            LineReader reader = new LineReader(in);
+            while (reader.next()) {
+                action.accept(reader.getLine());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read " + path, e);
+        }
+    }
+
+    /**
+     * Check whether a file starts with a given sequence of bytes
+     *
+     * @param filename file to check
+     * @param prefix expected first bytes
+     * @return true if the file exists and starts with the prefix
+     */
+    boolean startsWith(String filename, byte[] prefix) {
+        try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+            byte[] header = new byte[prefix.length];
+            int read = 0;
+            while (read < header.length) {
+                int count = in.read(header, read, header.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+            return Arrays.equals(header, prefix);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stream a file line by line through a transformation, output goes to a temporary file renamed over the original
+     * so that memory usage does not depend on the file size
+     *
+     * @param path file to transform
+     * @param transformation line transformation, returning the same instance when the line is unchanged
+     * @return true if at least one line changed and the file has been replaced
+     */
+    boolean transformFile(Path path, UnaryOperator<String> transformation) {
+        return transformFile(path, null, null, transformation);
+    }
+
+    /**
+     * Stream a file line by line through a transformation, observing the transformed content on the fly
+     *
+     * @param path file to transform
+     * @param digest updated with the transformed content, may be null
+     * @param copy receives a copy of the transformed content, may be null
+     * @param transformation line transformation, returning the same instance if the line is unchanged
+     * @return true if the file has been rewritten
+     */
+    boolean transformFile(Path path, MessageDigest digest, OutputStream copy, UnaryOperator<String> transformation) {
+        Path directory = path.toAbsolutePath().getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, path.getFileName().toString(), TMP_FILE_SUFFIX);
+
+            OutputStream out = Files.newOutputStream(tmp);
+            if (copy != null) {
+                out = new TeeOutputStream(out, copy);
+            }
+            if (digest != null) {
+                out = new DigestOutputStream(out, digest);
+            }
+
+            boolean isModified = false;
+            try (InputStream in = Files.newInputStream(path);
+                 OutputStream writer = new BufferedOutputStream(out)) {
+                // unchanged lines are copied byte for byte, line breaks and undecodable bytes included
+                LineReader reader = new LineReader(in);
+                while (reader.next()) {
+                    String line = reader.getLine();
+                    String transformedLine = transformation.apply(line);
+                    if (transformedLine != line) {
+                        isModified = true;
+                        reader.writeLine(writer, transformedLine);
+                    } else {
+                        reader.writeLine(writer);
+                    }
+                }
+            }
+
+            if (isModified) {
+                copyPermissions(path, tmp);
+                moveAtomically(tmp, path);
+            }
+
+            return isModified;
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to transform " + path, e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    private void copyPermissions(Path source, Path target) throws IOException {
+        if (Files.getFileStore(source).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
         }
     }
 
-    private List<String> toBase64(List<String> items) {
+    private void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void syncDirectory(Path directory) {
+        // persists the rename, directories cannot be opened on some platforms (Windows) where it is not needed
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("unable to sync " + directory, e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.info("unable to delete " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Check whether a file contains a sequence of bytes, without decoding it
+     *
+     * @param path file to scan
+     * @param marker bytes to look for
+     * @return true if the marker is found
+     */
+    boolean contains(Path path, byte[] marker) {
+        int[] fallback = getFallbackTable(marker);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            byte[] array = buffer.array();
+            int matched = 0;
+            while (channel.read(buffer) > 0) {
+                int limit = buffer.position();
+                for (int i = 0; i < limit; i++) {
+                    while (matched > 0 && array[i] != marker[matched]) {
+                        matched = fallback[matched - 1];
+                    }
+                    if (array[i] == marker[matched]) {
+                        matched++;
+                        if (matched == marker.length) {
+                            return true;
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read " + path, e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Knuth-Morris-Pratt table, a partial match survives buffer boundaries and overlapping prefixes such as @@@vault
+     */
+    private int[] getFallbackTable(byte[] marker) {
+        int[] fallback = new int[marker.length];
+        int length = 0;
+        for (int i = 1; i < marker.length; i++) {
+            while (length > 0 && marker[i] != marker[length]) {
+                length = fallback[length - 1];
+            }
+            if (marker[i] == marker[length]) {
+                length++;
+            }
+            fallback[i] = length;
+        }
+
+        return fallback;
+    }
+
+    List<String> toBase64(List<String> items) {
         return Collections.singletonList(
             Base64.getEncoder()
                   .encodeToString(
@@ -100,6 +494,20 @@ public class IOManager {
         return null;
     }
 
+    /**
+     * read file attributes
+     *
+     * @param filename file to inspect
+     * @return file attributes or null if the file can't be read
+     */
+    BasicFileAttributes getFileAttributes(String filename) {
+        try {
+            return Files.readAttributes(Paths.get(filename), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     private List<String> fromBase64(String content) {
         byte[] decodedBytes = Base64.getDecoder().decode(content);
         String decodedString = new String(decodedBytes, StandardCharsets.UTF_8);
@@ -134,4 +542,134 @@ public class IOManager {
         }
     }
 
+    /**
+     * Stream writing to a second stream as well
+     */
+    private static final class TeeOutputStream extends FilterOutputStream {
+
+        private final OutputStream copy;
+
+        private TeeOutputStream(OutputStream out, OutputStream copy) {
+            super(out);
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy.write(b, off, len);
+        }
+    }
+
+    /**
+     * Splits a stream into lines without decoding it beforehand, keeping the bytes and the line break of each line.
+     * Lines are decoded as UTF-8, or as ISO-8859-1 (as properties files) when they are not valid UTF-8, and only
+     * '\n' breaks lines, a '\r' preceding it belonging to the line break.
+     */
+    private static final class LineReader {
+
+        private static final byte[] CRLF = {'\r', '\n'};
+        private static final byte[] LF = {'\n'};
+        private static final byte[] NONE = {};
+
+        private final InputStream in;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+
+        private byte[] line = new byte[256];
+        private int length;
+        private byte[] lineBreak;
+        private Charset charset;
+
+        private LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return false once the stream is exhausted
+         */
+        boolean next() throws IOException {
+            length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        lineBreak = NONE;
+                        return length > 0;
+                    }
+                }
+
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                append(start, position - start);
+                if (position < limit) {
+                    position++;
+                    if (length > 0 && line[length - 1] == '\r') {
+                        length--;
+                        lineBreak = CRLF;
+                    } else {
+                        lineBreak = LF;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private void append(int start, int count) {
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+            }
+            System.arraycopy(buffer, start, line, length, count);
+            length += count;
+        }
+
+        /**
+         * @return current line, without its line break
+         */
+        String getLine() {
+            try {
+                charset = StandardCharsets.UTF_8;
+                return decoder.decode(ByteBuffer.wrap(line, 0, length)).toString();
+            } catch (CharacterCodingException e) {
+                charset = StandardCharsets.ISO_8859_1;
+                return new String(line, 0, length, charset);
+            }
+        }
+
+        /**
+         * copy the current line as is
+         */
+        void writeLine(OutputStream out) throws IOException {
+            out.write(line, 0, length);
+            out.write(lineBreak);
+        }
+
+        /**
+         * write a replacement of the current line, in the charset it was decoded with
+         */
+        void writeLine(OutputStream out, String replacement) throws IOException {
+            out.write(replacement.getBytes(charset));
+            out.write(lineBreak);
+        }
+    }
+
+    /**
+     * Writes content to a stream
+     */
+    @FunctionalInterface
+    interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
 }
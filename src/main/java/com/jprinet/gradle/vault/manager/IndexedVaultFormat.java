@@ -0,0 +1,219 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * V2 format: binary header, open addressing hash index of record offsets and separately addressable records,
+ * so that a single entry is read with a couple of positional reads whatever the vault size.
+ *
+ * <pre>
+ * header  : magic (4 bytes) | format version (int) | slot count (int) | entry count (int)
+ * index   : slot count * record offset (long, 0 for an empty slot)
+ * records : key length (int) | key (UTF-8) | value length (int) | value (UTF-8)
+ * </pre>
+ */
+final class IndexedVaultFormat implements VaultFormat {
+
+    static final String VERSION = "V2.0";
+
+    // not a Base64 character so that a V1 vault can't be mistaken for a V2 one
+    static final byte[] MAGIC = new byte[]{(byte) 0x89, 'V', 'L', 'T'};
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = MAGIC.length + 3 * Integer.BYTES;
+    private static final int SLOT_SIZE = Long.BYTES;
+
+    private final IOManager ioManager;
+
+    IndexedVaultFormat(IOManager ioManager) {
+        this.ioManager = ioManager;
+    }
+
+    @Override
+    public String getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public boolean isFormatOf(String vaultFile) {
+        return ioManager.startsWith(vaultFile, MAGIC);
+    }
+
+    @Override
+    public Map<String, String> read(String vaultFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(vaultFile))))) {
+            long fileSize = Files.size(Paths.get(vaultFile));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int slotCount = readHeader(magic, in.readInt(), in.readInt(), fileSize);
+            int entryCount = in.readInt();
+
+            // records are sequential after the index
+            skipFully(in, (long) slotCount * SLOT_SIZE);
+            Map<String, String> content = new HashMap<>(entryCount * 2);
+            for (int i = 0; i < entryCount; i++) {
+                String key = readString(in, fileSize);
+                String value = readString(in, fileSize);
+                content.put(key, value);
+            }
+
+            return content;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String read(String vaultFile, String encryptedKey) {
+        byte[] key = encryptedKey.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(Paths.get(vaultFile), StandardOpenOption.READ)) {
+            ByteBuffer header = readAt(channel, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            int slotCount = readHeader(magic, header.getInt(), header.getInt(), channel.size());
+
+            int mask = slotCount - 1;
+            for (int i = 0, slot = hash(encryptedKey) & mask; i < slotCount; i++, slot = (slot + 1) & mask) {
+                long offset = readAt(channel, HEADER_SIZE + (long) slot * SLOT_SIZE, SLOT_SIZE).getLong();
+                if (offset == 0) {
+                    return null;
+                }
+
+                int keyLength = readAt(channel, offset, Integer.BYTES).getInt();
+                if (keyLength == key.length) {
+                    ByteBuffer record = readAt(channel, offset + Integer.BYTES, keyLength + Integer.BYTES);
+                    byte[] candidate = new byte[keyLength];
+                    record.get(candidate);
+                    if (Arrays.equals(candidate, key)) {
+                        int valueLength = checkLength(record.getInt(), channel.size());
+                        ByteBuffer value = readAt(channel, offset + 2 * Integer.BYTES + keyLength, valueLength);
+                        return new String(value.array(), StandardCharsets.UTF_8);
+                    }
+                }
+            }
+
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void write(String vaultFile, Map<String, String> content) {
+        // sorted for a reproducible file
+        Map<String, String> sortedContent = new TreeMap<>(content);
+        int slotCount = getSlotCount(sortedContent.size());
+        int mask = slotCount - 1;
+
+        long[] slots = new long[slotCount];
+        long offset = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        for (Map.Entry<String, String> entry : sortedContent.entrySet()) {
+            int slot = hash(entry.getKey()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = offset;
+            offset += 2 * Integer.BYTES
+                + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                + entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        ioManager.writeFileAtomically(Paths.get(vaultFile), out -> {
+            DataOutputStream data = new DataOutputStream(out);
+            data.write(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            data.writeInt(slotCount);
+            data.writeInt(sortedContent.size());
+            for (long slot : slots) {
+                data.writeLong(slot);
+            }
+            for (Map.Entry<String, String> entry : sortedContent.entrySet()) {
+                writeString(data, entry.getKey());
+                writeString(data, entry.getValue());
+            }
+            data.flush();
+        });
+    }
+
+    private int readHeader(byte[] magic, int formatVersion, int slotCount, long fileSize) {
+        if (!Arrays.equals(magic, MAGIC) || formatVersion != FORMAT_VERSION
+            || slotCount <= 0 || Integer.bitCount(slotCount) != 1
+            || HEADER_SIZE + (long) slotCount * SLOT_SIZE > fileSize) {
+            throw new IllegalStateException("corrupted vault");
+        }
+
+        return slotCount;
+    }
+
+    private int getSlotCount(int entryCount) {
+        // load factor below 0.5 to keep probe sequences short
+        int slotCount = 2;
+        while (slotCount < entryCount * 2) {
+            slotCount <<= 1;
+        }
+
+        return slotCount;
+    }
+
+    private int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalStateException("corrupted vault");
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private String readString(DataInputStream in, long fileSize) throws IOException {
+        byte[] bytes = new byte[checkLength(in.readInt(), fileSize)];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checkLength(int length, long fileSize) {
+        if (length < 0 || length > fileSize) {
+            throw new IllegalStateException("corrupted vault");
+        }
+
+        return length;
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void skipFully(DataInputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new IllegalStateException("corrupted vault");
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of a resources processing, safe to update from concurrent workers
+ */
+final class ProcessingMetrics {
+
+    final LongAdder directoriesPruned = new LongAdder();
+    final LongAdder filesUnchanged = new LongAdder();
+    final LongAdder filesScanned = new LongAdder();
+    final LongAdder filesMatched = new LongAdder();
+    final LongAdder filesRewritten = new LongAdder();
+    final LongAdder tokensResolved = new LongAdder();
+    final LongAdder tokensMissing = new LongAdder();
+    final LongAdder secretsDecrypted = new LongAdder();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder resolutionCacheHits = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+
+    // nanoseconds, summed over all workers
+    final LongAdder walkTime = new LongAdder();
+    final LongAdder decryptTime = new LongAdder();
+    final LongAdder substituteTime = new LongAdder();
+    final LongAdder writeTime = new LongAdder();
+
+    private final long start = System.nanoTime();
+    private long totalTime;
+
+    /**
+     * @param timer timer to update
+     * @param startTime start of the measured section, from System.nanoTime()
+     */
+    static void stop(LongAdder timer, long startTime) {
+        timer.add(System.nanoTime() - startTime);
+    }
+
+    /**
+     * stop the overall timer
+     */
+    void close() {
+        totalTime = System.nanoTime() - start;
+    }
+
+    /**
+     * @return one line summary
+     */
+    String getSummary() {
+        return String.format(Locale.ROOT,
+                "%d file(s) unchanged, %d scanned, %d matched, %d rewritten, %d token(s) resolved, %d missing in %s ms (walk %s, decrypt %s, substitute %s, write %s)",
+                filesUnchanged.sum(), filesScanned.sum(), filesMatched.sum(), filesRewritten.sum(), tokensResolved.sum(), tokensMissing.sum(),
+                toMillis(totalTime), toMillis(walkTime.sum()), toMillis(decryptTime.sum()), toMillis(substituteTime.sum()), toMillis(writeTime.sum()));
+    }
+
+    /**
+     * @return JSON report lines
+     */
+    List<String> toJson() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("directoriesPruned", directoriesPruned.sum());
+        counters.put("filesUnchanged", filesUnchanged.sum());
+        counters.put("filesScanned", filesScanned.sum());
+        counters.put("filesMatched", filesMatched.sum());
+        counters.put("filesRewritten", filesRewritten.sum());
+        counters.put("tokensResolved", tokensResolved.sum());
+        counters.put("tokensMissing", tokensMissing.sum());
+        counters.put("secretsDecrypted", secretsDecrypted.sum());
+        counters.put("cacheHits", cacheHits.sum());
+        counters.put("resolutionCacheHits", resolutionCacheHits.sum());
+        counters.put("bytesRead", bytesRead.sum());
+        counters.put("bytesWritten", bytesWritten.sum());
+
+        // cumulated over workers, so they can exceed the total when processing in parallel
+        Map<String, Object> timings = new LinkedHashMap<>();
+        timings.put("totalMs", toMillis(totalTime));
+        timings.put("walkMs", toMillis(walkTime.sum()));
+        timings.put("decryptMs", toMillis(decryptTime.sum()));
+        timings.put("substituteMs", toMillis(substituteTime.sum()));
+        timings.put("writeMs", toMillis(writeTime.sum()));
+
+        List<String> lines = new ArrayList<>();
+        lines.add("{");
+        counters.forEach((name, value) -> lines.add("  " + Json.quote(name) + ": " + value + ","));
+        lines.add("  " + Json.quote("timings") + ": {");
+        List<String> entries = new ArrayList<>();
+        timings.forEach((name, value) -> entries.add("    " + Json.quote(name) + ": " + value));
+        lines.add(String.join(",\n", entries));
+        lines.add("  }");
+        lines.add("}");
+        return lines;
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
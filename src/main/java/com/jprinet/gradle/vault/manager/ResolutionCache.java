@@ -0,0 +1,284 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypted on-disk cache of processed resources, keyed by the vault and template digests.
+ * Entries are dropped whenever the vault content changes and evicted least recently used first past the size limit.
+ * Entry layout: 7 bytes nonce prefix, then the content as AES/GCM encrypted chunks of 64KB followed by their tag, the
+ * nonce of a chunk being the prefix, the chunk index and a last chunk flag, so that entries are streamed in and out
+ * whatever the resource size and a truncated entry is detected.
+ */
+final class ResolutionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionCache.class);
+
+    static final String KEY_USAGE = "vault-cache";
+    static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final int TAG_LENGTH = 128;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String VAULT_DIGEST_FILE = "vault.digest";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final IOManager ioManager;
+    private final Path directory;
+    private final SecretKeySpec key;
+    private final byte[] vaultDigest;
+    private final long maxSize;
+
+    /**
+     * open the cache, dropping its entries if they were computed from another vault content
+     *
+     * @param ioManager IO manager
+     * @param directory cache directory, created if missing
+     * @param key entries encryption key
+     * @param vaultDigest digest of the vault content
+     * @param maxSize size above which entries get evicted
+     */
+    ResolutionCache(IOManager ioManager, Path directory, byte[] key, byte[] vaultDigest, long maxSize) {
+        this.ioManager = ioManager;
+        this.directory = directory;
+        this.key = new SecretKeySpec(key, "AES");
+        this.vaultDigest = vaultDigest;
+        this.maxSize = maxSize;
+
+        try {
+            Files.createDirectories(directory);
+            Path vaultDigestFile = directory.resolve(VAULT_DIGEST_FILE);
+            String currentDigest = IOManager.toHex(vaultDigest);
+            if (!Files.exists(vaultDigestFile) || !currentDigest.equals(new String(Files.readAllBytes(vaultDigestFile), StandardCharsets.UTF_8))) {
+                clear();
+                ioManager.writeFileAtomically(vaultDigestFile, out -> out.write(currentDigest.getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to open resolution cache " + directory, e);
+        }
+    }
+
+    /**
+     * restore the processed content of a template
+     *
+     * @param templateDigest digest of the template
+     * @param path resource to write the processed content to
+     * @param digest updated with the processed content
+     *
+     * @return true if the content was cached, the resource being left untouched otherwise
+     */
+    boolean restore(byte[] templateDigest, Path path, MessageDigest digest) {
+        Path entry = getEntry(templateDigest);
+        if (!Files.exists(entry)) {
+            return false;
+        }
+
+        try (PushbackInputStream in = new PushbackInputStream(Files.newInputStream(entry))) {
+            byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+            if (read(in, prefix) < prefix.length) {
+                throw new IOException("truncated nonce");
+            }
+
+            // the resource is only replaced once every chunk has been authenticated
+            ioManager.writeFileAtomically(path, out -> {
+                OutputStream content = new DigestOutputStream(out, digest);
+                byte[] chunk = new byte[CHUNK_SIZE + TAG_LENGTH / 8];
+                int index = 0;
+                boolean isLast;
+                do {
+                    int length = read(in, chunk);
+                    isLast = length < chunk.length || isEnd(in);
+                    content.write(crypt(Cipher.DECRYPT_MODE, prefix, index++, isLast, chunk, length));
+                } while (!isLast);
+            });
+
+            // most recently used entries are evicted last
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // corrupted, truncated or encrypted with another passphrase
+            LOGGER.debug("dropping unreadable resolution cache entry " + entry, e);
+            ioManager.deleteFile(entry.toString());
+            return false;
+        }
+    }
+
+    /**
+     * @param templateDigest digest of the template
+     * @param contentWriter writer of the processed content, streamed encrypted to the entry
+     */
+    void put(byte[] templateDigest, IOManager.ContentWriter contentWriter) {
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        RANDOM.nextBytes(prefix);
+
+        ioManager.writeFileAtomically(getEntry(templateDigest), out -> {
+            out.write(prefix);
+            EntryOutputStream content = new EntryOutputStream(out, prefix);
+            contentWriter.write(content);
+            content.finish();
+        });
+    }
+
+    /**
+     * drop least recently used entries until the cache fits its size limit
+     */
+    void evict() {
+        List<Path> entries = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+                size += Files.size(entry);
+            }
+
+            if (size <= maxSize) {
+                return;
+            }
+
+            entries.sort(Comparator.comparing(ResolutionCache::getLastModifiedTime));
+            for (Path entry : entries) {
+                if (size <= maxSize) {
+                    break;
+                }
+                size -= Files.size(entry);
+                Files.deleteIfExists(entry);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to evict resolution cache entries", e);
+        }
+    }
+
+    private void clear() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            for (Path entry : stream) {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    private Path getEntry(byte[] templateDigest) {
+        byte[] entryKey = new byte[vaultDigest.length + templateDigest.length];
+        System.arraycopy(vaultDigest, 0, entryKey, 0, vaultDigest.length);
+        System.arraycopy(templateDigest, 0, entryKey, vaultDigest.length, templateDigest.length);
+        return directory.resolve(IOManager.toHex(ioManager.digest(entryKey)) + ENTRY_SUFFIX);
+    }
+
+    private byte[] crypt(int mode, byte[] prefix, int index, boolean isLast, byte[] input, int length) throws IOException {
+        byte[] nonce = Arrays.copyOf(prefix, NONCE_LENGTH);
+        ByteBuffer.wrap(nonce, NONCE_PREFIX_LENGTH, Integer.BYTES).putInt(index);
+        nonce[NONCE_LENGTH - 1] = (byte) (isLast ? 1 : 0);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH, nonce));
+            return cipher.doFinal(input, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("unable to " + (mode == Cipher.ENCRYPT_MODE ? "encrypt" : "decrypt") + " resolution cache entry chunk " + index, e);
+        }
+    }
+
+    /**
+     * @return number of bytes read, lower than the buffer length at the end of the stream only
+     */
+    private static int read(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int count;
+        while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += count;
+        }
+        return length;
+    }
+
+    private static boolean isEnd(PushbackInputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return true;
+        }
+        in.unread(b);
+        return false;
+    }
+
+    private static FileTime getLastModifiedTime(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Encrypts the content chunk by chunk, the last chunk being written on finish
+     */
+    private final class EntryOutputStream extends FilterOutputStream {
+
+        private final byte[] prefix;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int length;
+        private int index;
+
+        private EntryOutputStream(OutputStream out, byte[] prefix) {
+            super(out);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // a full chunk is only written once more content follows, the last one being flagged as such
+                if (length == chunk.length) {
+                    writeChunk(false);
+                }
+                int count = Math.min(len, chunk.length - length);
+                System.arraycopy(b, off, chunk, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void close() {
+            // the entry stream is owned by the atomic write
+        }
+
+        private void finish() throws IOException {
+            writeChunk(true);
+        }
+
+        private void writeChunk(boolean isLast) throws IOException {
+            out.write(crypt(Cipher.ENCRYPT_MODE, prefix, index++, isLast, chunk, length));
+            length = 0;
+        }
+    }
+}
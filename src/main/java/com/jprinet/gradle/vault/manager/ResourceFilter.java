@@ -0,0 +1,227 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Select the resources to process, either with include/exclude globs relative to the resource path
+ * (Ant style, as Gradle file trees: *, ?, ** for any number of directories) or with the legacy regular expression
+ * matched against the path relative to the project directory.
+ * Directories which can't hold any selected resource are reported as not traversable so that the walk can prune them.
+ */
+public final class ResourceFilter {
+
+    private final VaultConfiguration configuration;
+    private final Path root;
+    private final List<GlobPattern> includes;
+    private final List<GlobPattern> excludes;
+    private final Pattern resourcePattern;
+
+    public ResourceFilter(VaultConfiguration configuration) {
+        this.configuration = configuration;
+        this.root = Paths.get(configuration.resourcePath).toAbsolutePath();
+        this.includes = compile(configuration.resourceIncludes);
+        this.excludes = compile(configuration.resourceExcludes);
+        this.resourcePattern = includes.isEmpty() ? Pattern.compile(configuration.resourcePattern) : null;
+    }
+
+    private static List<GlobPattern> compile(List<String> globs) {
+        if (globs == null) {
+            return Collections.emptyList();
+        }
+
+        return globs.stream().map(GlobPattern::new).collect(Collectors.toList());
+    }
+
+    /**
+     * @return walk root
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param file file below the resource path
+     *
+     * @return true if the file has to be processed
+     */
+    public boolean isResource(Path file) {
+        List<String> segments = getSegments(file);
+        for (GlobPattern exclude : excludes) {
+            if (exclude.matches(segments)) {
+                return false;
+            }
+        }
+
+        if (resourcePattern != null) {
+            return resourcePattern.matcher(configuration.relativize(file)).matches();
+        }
+
+        for (GlobPattern include : includes) {
+            if (include.matches(segments)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param directory directory below the resource path
+     *
+     * @return false if no file below the directory can be a resource
+     */
+    public boolean isTraversable(Path directory) {
+        List<String> segments = getSegments(directory);
+        for (GlobPattern exclude : excludes) {
+            if (exclude.excludesAllBelow(segments)) {
+                return false;
+            }
+        }
+
+        if (resourcePattern != null) {
+            // a failed match which did not reach the end of the input can't succeed on a longer path
+            Matcher matcher = resourcePattern.matcher(configuration.relativize(directory) + File.separator);
+            return matcher.matches() || matcher.hitEnd();
+        }
+
+        for (GlobPattern include : includes) {
+            if (include.matchesBelow(segments)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private List<String> getSegments(Path path) {
+        Path relativePath = root.relativize(path.toAbsolutePath());
+        List<String> segments = new ArrayList<>(relativePath.getNameCount());
+        for (Path segment : relativePath) {
+            if (!segment.toString().isEmpty()) {
+                segments.add(segment.toString());
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Ant style path pattern, matched segment by segment
+     */
+    private static final class GlobPattern {
+
+        private static final String ANY_DIRECTORIES = "**";
+
+        private final List<String> segments = new ArrayList<>();
+        private final List<Pattern> matchers = new ArrayList<>();
+
+        GlobPattern(String glob) {
+            String normalizedGlob = glob.replace('\\', '/');
+            // as Ant, a trailing separator selects the whole subtree
+            if (normalizedGlob.endsWith("/")) {
+                normalizedGlob += ANY_DIRECTORIES;
+            }
+
+            for (String segment : normalizedGlob.split("/")) {
+                if (!segment.isEmpty()) {
+                    segments.add(segment);
+                    matchers.add(ANY_DIRECTORIES.equals(segment) ? null : Pattern.compile(toRegex(segment)));
+                }
+            }
+        }
+
+        private static String toRegex(String segment) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : segment.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+
+            return regex.toString();
+        }
+
+        /**
+         * @param path path segments
+         *
+         * @return true if the whole path matches
+         */
+        boolean matches(List<String> path) {
+            return matches(0, path, 0, false);
+        }
+
+        /**
+         * @param directory directory segments
+         *
+         * @return true if a path below the directory may match
+         */
+        boolean matchesBelow(List<String> directory) {
+            return matches(0, directory, 0, true);
+        }
+
+        /**
+         * @param directory directory segments
+         *
+         * @return true if any path below the directory matches, the pattern ending with **
+         */
+        boolean excludesAllBelow(List<String> directory) {
+            int last = segments.size() - 1;
+            return last >= 0 && ANY_DIRECTORIES.equals(segments.get(last)) && matches(0, directory, 0, false, last);
+        }
+
+        private boolean matches(int patternIndex, List<String> path, int pathIndex, boolean isPrefix) {
+            return matches(patternIndex, path, pathIndex, isPrefix, segments.size());
+        }
+
+        private boolean matches(int patternIndex, List<String> path, int pathIndex, boolean isPrefix, int patternLength) {
+            while (patternIndex < patternLength) {
+                if (matchers.get(patternIndex) == null) {
+                    if (isPrefix && patternIndex == patternLength - 1) {
+                        return true;
+                    }
+
+                    // ** consumes zero or more segments
+                    for (int i = pathIndex; i <= path.size(); i++) {
+                        if (matches(patternIndex + 1, path, i, isPrefix, patternLength)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                if (pathIndex == path.size()) {
+                    // the directory is fully consumed, remaining segments may match deeper files
+                    return isPrefix;
+                }
+
+                if (!matchers.get(patternIndex).matcher(path.get(pathIndex)).matches()) {
+                    return false;
+                }
+
+                patternIndex++;
+                pathIndex++;
+            }
+
+            return !isPrefix && pathIndex == path.size();
+        }
+    }
+}
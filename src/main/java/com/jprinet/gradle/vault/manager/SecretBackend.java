@@ -0,0 +1,20 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Source of the plaintext secrets replacing the tokens, selected with the secretBackend option
+ */
+interface SecretBackend {
+
+    /**
+     * fetch secrets in a single batch
+     *
+     * @param identifiers secret identifiers
+     * @param metrics metrics to update with the fetch time or the cache reuse, may be null
+     *
+     * @return plaintext secrets found, by identifier
+     */
+    Map<String, String> fetch(Collection<String> identifiers, ProcessingMetrics metrics);
+}
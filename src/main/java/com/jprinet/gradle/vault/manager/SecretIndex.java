@@ -0,0 +1,95 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Index of plaintext secrets by identifier over a vault snapshot, secrets being decrypted on first use only
+ * and memoized, safe to query from concurrent workers
+ */
+final class SecretIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecretIndex.class);
+
+    private final VaultSnapshot source;
+    private final VaultCipher vaultCipher;
+    private final Set<String> excludedKeys;
+    // absent values are memoized as well, unknown tokens being looked up once
+    private final Map<String, Optional<String>> secrets = new ConcurrentHashMap<>();
+
+    /**
+     * @param source vault snapshot to resolve
+     * @param vaultCipher vault cipher
+     * @param excludedKeys keys not to resolve (vault passphrase and key derivation entries)
+     */
+    SecretIndex(VaultSnapshot source, VaultCipher vaultCipher, Set<String> excludedKeys) {
+        this.source = source;
+        this.vaultCipher = vaultCipher;
+        this.excludedKeys = excludedKeys;
+    }
+
+    /**
+     * @param snapshot vault snapshot
+     *
+     * @return whether this index was resolved from the given snapshot
+     */
+    boolean isResolvedFrom(VaultSnapshot snapshot) {
+        return source == snapshot;
+    }
+
+    /**
+     * @param identifier secret identifier
+     *
+     * @return plaintext secret or null if not in the vault
+     */
+    String get(String identifier) {
+        return secrets.computeIfAbsent(identifier, this::decrypt).orElse(null);
+    }
+
+    private Optional<String> decrypt(String identifier) {
+        // keys are deterministic, the entry is found without decrypting the other ones
+        String key = vaultCipher.encryptKey(identifier);
+        String encryptedValue = excludedKeys.contains(key) ? null : source.getContent().get(key);
+        if (encryptedValue == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(vaultCipher.decryptValue(key, encryptedValue));
+        } catch (IllegalStateException e) {
+            LOGGER.warn("unable to resolve vault entry " + identifier + ", skipping it", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * decrypt every vault entry, for bulk operations only
+     *
+     * @param action called with each identifier and its plaintext secret
+     */
+    void forEach(BiConsumer<String, String> action) {
+        for (Map.Entry<String, String> entry : source.getContent().entrySet()) {
+            if (!excludedKeys.contains(entry.getKey())) {
+                try {
+                    Map.Entry<String, String> secret = vaultCipher.decryptEntry(entry.getKey(), entry.getValue());
+                    secrets.putIfAbsent(secret.getKey(), Optional.of(secret.getValue()));
+                    action.accept(secret.getKey(), secret.getValue());
+                } catch (IllegalStateException e) {
+                    LOGGER.warn("unable to resolve vault entry, skipping it", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * drop all plaintext secrets
+     */
+    void wipe() {
+        secrets.clear();
+    }
+}
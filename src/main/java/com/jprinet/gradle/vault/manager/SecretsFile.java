@@ -0,0 +1,215 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Plaintext identifier/secret file used for bulk import and export, the layout being picked from the file extension:
+ * .properties, .json (flat object) or .csv (identifier,value with an optional header)
+ */
+final class SecretsFile {
+
+    private static final String CSV_HEADER = "identifier,value";
+
+    private SecretsFile() {
+    }
+
+    /**
+     * @param path file to read
+     *
+     * @return secrets by identifier, in file order
+     */
+    static Map<String, String> read(Path path) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            switch (getExtension(path)) {
+                case "properties":
+                    return readProperties(reader);
+                case "json":
+                    return readJson(reader);
+                case "csv":
+                    return readCsv(reader);
+                default:
+                    throw new IllegalArgumentException("unsupported secrets file " + path + ", expecting .properties, .json or .csv");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read " + path, e);
+        }
+    }
+
+    /**
+     * @param ioManager IO manager
+     * @param path file to write
+     * @param secrets secrets by identifier
+     */
+    static void write(IOManager ioManager, Path path, Map<String, String> secrets) {
+        String extension = getExtension(path);
+        ioManager.writeFileAtomically(path, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            switch (extension) {
+                case "properties":
+                    writeProperties(writer, secrets);
+                    break;
+                case "json":
+                    writeJson(writer, secrets);
+                    break;
+                case "csv":
+                    writeCsv(writer, secrets);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported secrets file " + path + ", expecting .properties, .json or .csv");
+            }
+            writer.flush();
+        });
+    }
+
+    private static String getExtension(Path path) {
+        String filename = path.getFileName().toString();
+        return filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> readProperties(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+
+        Map<String, String> secrets = new LinkedHashMap<>();
+        properties.stringPropertyNames().forEach(name -> secrets.put(name, properties.getProperty(name)));
+        return secrets;
+    }
+
+    private static void writeProperties(Writer writer, Map<String, String> secrets) throws IOException {
+        // escape one entry at a time to keep the order and skip the timestamp comment
+        for (Map.Entry<String, String> secret : secrets.entrySet()) {
+            Properties properties = new Properties();
+            properties.setProperty(secret.getKey(), secret.getValue());
+            StringWriter entry = new StringWriter();
+            properties.store(entry, null);
+            for (String line : entry.toString().split("\\R")) {
+                if (!line.startsWith("#")) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> readJson(BufferedReader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = reader.read(buffer)) >= 0) {
+            text.append(buffer, 0, count);
+        }
+
+        Object json = Json.parse(text.toString());
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException("JSON secrets file must be an object of identifier/secret");
+        }
+
+        Map<String, String> secrets = new LinkedHashMap<>();
+        ((Map<?, ?>) json).forEach((key, value) -> {
+            if (value instanceof Map || value instanceof Iterable) {
+                throw new IllegalArgumentException("nested value not supported for " + key);
+            }
+            secrets.put(String.valueOf(key), value != null ? Json.toText(value) : "");
+        });
+        return secrets;
+    }
+
+    private static void writeJson(Writer writer, Map<String, String> secrets) throws IOException {
+        writer.write("{");
+        String separator = "\n";
+        for (Map.Entry<String, String> entry : secrets.entrySet()) {
+            writer.write(separator + "  " + Json.quote(entry.getKey()) + ": " + Json.quote(entry.getValue()));
+            separator = ",\n";
+        }
+        writer.write("\n}\n");
+    }
+
+    private static Map<String, String> readCsv(Reader reader) throws IOException {
+        Map<String, String> secrets = new LinkedHashMap<>();
+        String[] record;
+        boolean isFirstRecord = true;
+        while ((record = readCsvRecord(reader)) != null) {
+            if (isFirstRecord && CSV_HEADER.equals(record[0] + "," + record[1])) {
+                isFirstRecord = false;
+                continue;
+            }
+            isFirstRecord = false;
+
+            if (!record[0].isEmpty()) {
+                secrets.put(record[0], record[1]);
+            }
+        }
+        return secrets;
+    }
+
+    /**
+     * read identifier,value where fields can be double quoted (quotes being doubled inside)
+     */
+    private static String[] readCsvRecord(Reader reader) throws IOException {
+        StringBuilder[] fields = new StringBuilder[]{new StringBuilder(), new StringBuilder()};
+        int field = 0;
+        boolean isQuoted = false;
+        boolean isEmpty = true;
+        int c;
+        while ((c = reader.read()) >= 0) {
+            isEmpty = false;
+            if (isQuoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        fields[field].append('"');
+                    } else {
+                        reader.reset();
+                        isQuoted = false;
+                    }
+                } else {
+                    fields[field].append((char) c);
+                }
+            } else if (c == '"') {
+                isQuoted = true;
+            } else if (c == ',' && field == 0) {
+                field = 1;
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                fields[field].append((char) c);
+            }
+        }
+
+        if (isEmpty) {
+            return null;
+        }
+        if (field == 0 && fields[0].length() > 0) {
+            throw new IllegalArgumentException("invalid CSV record " + fields[0] + ", expecting identifier,value");
+        }
+
+        return new String[]{fields[0].toString(), fields[1].toString()};
+    }
+
+    private static void writeCsv(Writer writer, Map<String, String> secrets) throws IOException {
+        writer.write(CSV_HEADER + "\n");
+        for (Map.Entry<String, String> entry : secrets.entrySet()) {
+            writer.write(quoteCsv(entry.getKey()) + "," + quoteCsv(entry.getValue()) + "\n");
+        }
+    }
+
+    private static String quoteCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
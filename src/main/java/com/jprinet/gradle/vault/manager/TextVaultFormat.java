@@ -0,0 +1,101 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * V3 format: a header line then one encKey---encValue line per entry, sorted by key and separated by \n whatever the platform,
+ * so that updating a secret only changes its own line and concurrent updates can be merged (see {@link VaultMergeDriver}).
+ */
+final class TextVaultFormat implements VaultFormat {
+
+    static final String VERSION = "V3.0";
+
+    // not a Base64 character so that a V1 vault can't be mistaken for a V3 one
+    static final String HEADER = "#vault V3";
+
+    private static final String VAULT_SEPARATOR = "---";
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final IOManager ioManager;
+
+    TextVaultFormat(IOManager ioManager) {
+        this.ioManager = ioManager;
+    }
+
+    @Override
+    public String getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public boolean isFormatOf(String vaultFile) {
+        return ioManager.startsWith(vaultFile, HEADER.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Map<String, String> read(String vaultFile) {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(vaultFile), StandardCharsets.UTF_8)) {
+            Map<String, String> content = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = getSeparator(line);
+                if (separator > 0) {
+                    content.put(line.substring(0, separator), line.substring(separator + VAULT_SEPARATOR.length()));
+                }
+            }
+
+            return content;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String read(String vaultFile, String encryptedKey) {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(vaultFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = getSeparator(line);
+                if (separator > 0) {
+                    // entries are sorted, the key can't be further
+                    int comparison = line.substring(0, separator).compareTo(encryptedKey);
+                    if (comparison == 0) {
+                        return line.substring(separator + VAULT_SEPARATOR.length());
+                    } else if (comparison > 0) {
+                        return null;
+                    }
+                }
+            }
+
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private int getSeparator(String line) {
+        return line.startsWith("#") ? -1 : line.indexOf(VAULT_SEPARATOR);
+    }
+
+    @Override
+    public void write(String vaultFile, Map<String, String> content) {
+        Map<String, String> sortedContent = new TreeMap<>(content);
+        ioManager.writeFileAtomically(Paths.get(vaultFile), out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.append(HEADER).append(LINE_SEPARATOR);
+            for (Map.Entry<String, String> entry : sortedContent.entrySet()) {
+                writer.append(entry.getKey()).append(VAULT_SEPARATOR).append(entry.getValue()).append(LINE_SEPARATOR);
+            }
+            writer.flush();
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Single pass @@vault.KEY@@ token substitution, not thread safe as the output buffer is reused between lines
+ */
+final class TokenScanner {
+
+    static final String TOKEN_SEPARATOR = "@@";
+    static final String TOKEN_PREFIX = "vault";
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * replace tokens with their values, unresolved tokens are left untouched
+     *
+     * @param line line to process
+     * @param resolver token to value function, returning null if the token is unknown
+     * @param missingTokenHandler called for each unresolved token
+     *
+     * @return processed line, the same instance if nothing was replaced
+     */
+    String process(String line, Function<String, String> resolver, Consumer<String> missingTokenHandler) {
+        int start = line.indexOf(TOKEN_SEPARATOR);
+        if (start < 0) {
+            return line;
+        }
+
+        buffer.setLength(0);
+        int copied = 0;
+        while (start >= 0) {
+            int tokenStart = start + TOKEN_SEPARATOR.length();
+            int end = line.indexOf(TOKEN_SEPARATOR, tokenStart);
+            if (end < 0) {
+                break;
+            }
+
+            if (line.startsWith(TOKEN_PREFIX, tokenStart)) {
+                String token = line.substring(tokenStart, end);
+                String value = resolver.apply(token);
+                if (value != null) {
+                    buffer.append(line, copied, start).append(value);
+                    copied = end + TOKEN_SEPARATOR.length();
+                } else {
+                    missingTokenHandler.accept(token);
+                }
+                start = line.indexOf(TOKEN_SEPARATOR, end + TOKEN_SEPARATOR.length());
+            } else {
+                // a token may open within the separator (@@@vault) or at the closing one
+                start = line.indexOf(TOKEN_SEPARATOR, start + 1);
+            }
+        }
+
+        if (copied == 0) {
+            return line;
+        }
+
+        return buffer.append(line, copied, line.length()).toString();
+    }
+}
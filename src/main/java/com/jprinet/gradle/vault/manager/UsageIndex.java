@@ -0,0 +1,313 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * On-disk index of the token usages, from secret identifier to (file, line) and from file to content digest.
+ * It is updated incrementally by the processing, so that unchanged resources are skipped and the resources referencing a secret
+ * are known without walking the tree. Paths are stored relative to the project directory.
+ *
+ * <pre>
+ * { "files": { "build/conf/app.properties": { "size": 12, "modified": 1700000000000, "digest": "..." } },
+ *   "secrets": { "vault.db": [ { "file": "build/conf/app.properties", "line": 3, "resolved": true } ] } }
+ * </pre>
+ */
+final class UsageIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UsageIndex.class);
+
+    private static final String FILES = "files";
+    private static final String SECRETS = "secrets";
+    private static final String SIZE = "size";
+    private static final String MODIFIED = "modified";
+    private static final String DIGEST = "digest";
+    private static final String FILE = "file";
+    private static final String LINE = "line";
+    private static final String RESOLVED = "resolved";
+
+    private final VaultConfiguration configuration;
+    private final Map<Path, FileEntry> files = new HashMap<>();
+    private boolean isModified;
+
+    private UsageIndex(VaultConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param configuration execution context
+     *
+     * @return stored index, empty if missing or unreadable
+     */
+    static UsageIndex load(VaultConfiguration configuration) {
+        UsageIndex index = new UsageIndex(configuration);
+        Path indexFile = Paths.get(configuration.usageIndexFile);
+        if (!Files.exists(indexFile)) {
+            // written even if empty, telling processed resources without token from unprocessed ones
+            index.isModified = true;
+            return index;
+        }
+
+        try {
+            Object json = Json.parse(new String(Files.readAllBytes(indexFile), StandardCharsets.UTF_8));
+            Map<Path, List<Usage>> usages = new HashMap<>();
+            getMap(json, SECRETS).forEach((name, locations) -> {
+                String identifier = String.valueOf(name);
+                for (Object location : (List<?>) locations) {
+                    Path file = Paths.get(configuration.resolve((String) getField(location, FILE)));
+                    int line = ((BigDecimal) getField(location, LINE)).intValue();
+                    boolean isResolved = Boolean.TRUE.equals(getField(location, RESOLVED));
+                    usages.computeIfAbsent(file, key -> new ArrayList<>()).add(new Usage(identifier, file, line, isResolved));
+                }
+            });
+            getMap(json, FILES).forEach((name, entry) -> {
+                Path file = Paths.get(configuration.resolve(String.valueOf(name)));
+                long size = ((BigDecimal) getField(entry, SIZE)).longValue();
+                long modified = ((BigDecimal) getField(entry, MODIFIED)).longValue();
+                index.files.put(file, new FileEntry(size, modified, (String) getField(entry, DIGEST), usages.getOrDefault(file, Collections.emptyList())));
+            });
+        } catch (IOException | RuntimeException e) {
+            // rebuilt by the next processing
+            LOGGER.info("unable to read usage index " + indexFile + ", ignoring it", e);
+            index.files.clear();
+        }
+
+        return index;
+    }
+
+    private static Map<?, ?> getMap(Object json, String field) {
+        Object value = getField(json, field);
+        return value instanceof Map ? (Map<?, ?>) value : Collections.emptyMap();
+    }
+
+    private static Object getField(Object json, String field) {
+        return json instanceof Map ? ((Map<?, ?>) json).get(field) : null;
+    }
+
+    /**
+     * @param path resource
+     *
+     * @return indexed entry, null if the resource has not been processed yet
+     */
+    synchronized FileEntry get(Path path) {
+        return files.get(path);
+    }
+
+    /**
+     * @param path resource
+     * @param entry state of the resource once processed
+     */
+    synchronized void put(Path path, FileEntry entry) {
+        files.put(path, entry);
+        isModified = true;
+    }
+
+    /**
+     * drop the resources which are not part of the given ones anymore
+     *
+     * @param paths all resources
+     */
+    synchronized void retain(Collection<Path> paths) {
+        isModified |= files.keySet().retainAll(new HashSet<>(paths));
+    }
+
+    /**
+     * @param path deleted resource
+     */
+    synchronized void remove(Path path) {
+        isModified |= files.remove(path) != null;
+    }
+
+    /**
+     * @param filter usages to keep
+     *
+     * @return usages by identifier, sorted by identifier and location
+     */
+    synchronized Map<String, List<Usage>> getUsages(Predicate<Usage> filter) {
+        Map<String, List<Usage>> usages = new TreeMap<>();
+        files.values().forEach(entry -> entry.usages.stream()
+                                                    .filter(filter)
+                                                    .forEach(usage -> usages.computeIfAbsent(usage.identifier, key -> new ArrayList<>()).add(usage)));
+        usages.values().forEach(locations -> locations.sort(Comparator.comparing(Usage::getFile).thenComparingInt(Usage::getLine)));
+
+        return usages;
+    }
+
+    /**
+     * @param filter usages to look for
+     *
+     * @return resources with at least one matching usage
+     */
+    synchronized Set<Path> getFiles(Predicate<Usage> filter) {
+        Set<Path> paths = new HashSet<>();
+        files.forEach((path, entry) -> {
+            if (entry.usages.stream().anyMatch(filter)) {
+                paths.add(path);
+            }
+        });
+
+        return paths;
+    }
+
+    /**
+     * write the index if it changed since it was loaded
+     */
+    synchronized void save() {
+        if (!isModified) {
+            return;
+        }
+
+        Map<String, FileEntry> sortedFiles = new TreeMap<>();
+        files.forEach((path, entry) -> sortedFiles.put(configuration.relativize(path), entry));
+        Map<String, List<Usage>> usages = getUsages(usage -> true);
+
+        Path indexFile = Paths.get(configuration.usageIndexFile);
+        try {
+            Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to create usage index directory for " + indexFile, e);
+        }
+        configuration.getIoManager().writeFileAtomically(indexFile, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write("{\n  " + Json.quote(FILES) + ": {");
+            String separator = "\n";
+            for (Map.Entry<String, FileEntry> file : sortedFiles.entrySet()) {
+                FileEntry entry = file.getValue();
+                writer.write(separator + "    " + Json.quote(file.getKey()) + ": { " + Json.quote(SIZE) + ": " + entry.size + ", "
+                             + Json.quote(MODIFIED) + ": " + entry.modified
+                             + (entry.digest != null ? ", " + Json.quote(DIGEST) + ": " + Json.quote(entry.digest) : "") + " }");
+                separator = ",\n";
+            }
+            writer.write("\n  },\n  " + Json.quote(SECRETS) + ": {");
+            separator = "\n";
+            for (Map.Entry<String, List<Usage>> secret : usages.entrySet()) {
+                List<String> locations = new ArrayList<>();
+                for (Usage usage : secret.getValue()) {
+                    locations.add("{ " + Json.quote(FILE) + ": " + Json.quote(configuration.relativize(usage.file)) + ", " + Json.quote(LINE) + ": " + usage.line
+                                  + ", " + Json.quote(RESOLVED) + ": " + usage.isResolved + " }");
+                }
+                writer.write(separator + "    " + Json.quote(secret.getKey()) + ": [ " + String.join(", ", locations) + " ]");
+                separator = ",\n";
+            }
+            writer.write("\n  }\n}\n");
+            writer.flush();
+        });
+        isModified = false;
+    }
+
+    /**
+     * State of a resource once processed
+     */
+    static final class FileEntry {
+
+        private final long size;
+        private final long modified;
+        // null if the content is only identified by its size and modification time
+        private final String digest;
+        private final List<Usage> usages;
+
+        /**
+         * @param attributes resource attributes once processed
+         * @param digest hex digest of the content once processed, null if not computed
+         * @param usages tokens found in the resource template
+         */
+        FileEntry(BasicFileAttributes attributes, String digest, List<Usage> usages) {
+            this(attributes.size(), attributes.lastModifiedTime().toMillis(), digest, usages);
+        }
+
+        private FileEntry(long size, long modified, String digest, List<Usage> usages) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+            this.usages = usages;
+        }
+
+        /**
+         * @param attributes current attributes of the resource
+         *
+         * @return true if neither the size nor the modification time changed
+         */
+        boolean isUpToDate(BasicFileAttributes attributes) {
+            return attributes != null && attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+        }
+
+        /**
+         * @param attributes current attributes of the resource
+         *
+         * @return true if the content may be unchanged and has to be compared to the digest
+         */
+        boolean isComparable(BasicFileAttributes attributes) {
+            return digest != null && attributes != null && attributes.size() == size;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        List<Usage> getUsages() {
+            return usages;
+        }
+
+        /**
+         * @return true if all the tokens have been replaced
+         */
+        boolean isResolved() {
+            return usages.stream().allMatch(usage -> usage.isResolved);
+        }
+    }
+
+    /**
+     * Token of a resource
+     */
+    static final class Usage {
+
+        private final String identifier;
+        private final Path file;
+        private final int line;
+        private final boolean isResolved;
+
+        Usage(String identifier, Path file, int line, boolean isResolved) {
+            this.identifier = identifier;
+            this.file = file;
+            this.line = line;
+            this.isResolved = isResolved;
+        }
+
+        String getIdentifier() {
+            return identifier;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        boolean isResolved() {
+            return isResolved;
+        }
+    }
+}
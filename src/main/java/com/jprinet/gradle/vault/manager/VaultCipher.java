@@ -0,0 +1,57 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.Map;
+
+/**
+ * Encryption scheme of the vault entries, keys being deterministic so that entries can be looked up
+ */
+interface VaultCipher {
+
+    /**
+     * @return scheme name, as set in the vaultEncryption option
+     */
+    String getName();
+
+    /**
+     * @return parameters stored in clear in the vault to rebuild the cipher from the passphrase, null if none
+     */
+    String getParameters();
+
+    /**
+     * @param identifier secret identifier
+     *
+     * @return vault key of the identifier
+     */
+    String encryptKey(String identifier);
+
+    /**
+     * @param identifier secret identifier
+     * @param value secret value
+     *
+     * @return encrypted value
+     */
+    String encryptValue(String identifier, String value);
+
+    /**
+     * @param key vault key
+     * @param encryptedValue encrypted value
+     *
+     * @return secret value
+     */
+    String decryptValue(String key, String encryptedValue);
+
+    /**
+     * @param key vault key
+     * @param encryptedValue encrypted value
+     *
+     * @return secret identifier and value
+     */
+    Map.Entry<String, String> decryptEntry(String key, String encryptedValue);
+
+    /**
+     * @param usage key usage, distinct usages giving unrelated keys
+     *
+     * @return 256 bits key derived from the vault keys, which never matches a vault key
+     */
+    byte[] deriveKey(String usage);
+}
@@ -0,0 +1,198 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.gradle.api.provider.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Copy filter replacing @@vault.KEY@@ tokens while files are copied, for instance:
+ * processResources { filter(vault.filterProperties, VaultFilter) }
+ * Lines are processed one at a time, line terminators being kept as is. Unresolved tokens are left untouched.
+ */
+public class VaultFilter extends FilterReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultFilter.class);
+
+    private static final String TOKEN_MARKER = TokenScanner.TOKEN_SEPARATOR + TokenScanner.TOKEN_PREFIX;
+
+    // set by Gradle from the filter properties once the filter is created
+    private String baseDirectory;
+    private String vaultFile;
+    private String vaultPassphraseFile;
+    private String secretBackend;
+    private String secretBackendUrl;
+    private String secretBackendTokenFile;
+    private Integer secretBackendTtl;
+    private Provider<VaultService> vaultService;
+
+    private final TokenScanner scanner = new TokenScanner();
+    private final StringBuilder line = new StringBuilder();
+    private SecretBackend backend;
+    // fetched secrets, absent ones included
+    private final Map<String, Optional<String>> secrets = new HashMap<>();
+    private String pending = "";
+    private int position;
+    private boolean isEndOfStream;
+
+    public VaultFilter(Reader in) {
+        super(in instanceof BufferedReader ? in : new BufferedReader(in));
+    }
+
+    public void setBaseDirectory(String baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    public void setVaultFile(String vaultFile) {
+        this.vaultFile = vaultFile;
+    }
+
+    public void setVaultPassphraseFile(String vaultPassphraseFile) {
+        this.vaultPassphraseFile = vaultPassphraseFile;
+    }
+
+    public void setSecretBackend(String secretBackend) {
+        this.secretBackend = secretBackend;
+    }
+
+    public void setSecretBackendUrl(String secretBackendUrl) {
+        this.secretBackendUrl = secretBackendUrl;
+    }
+
+    public void setSecretBackendTokenFile(String secretBackendTokenFile) {
+        this.secretBackendTokenFile = secretBackendTokenFile;
+    }
+
+    public void setSecretBackendTtl(Integer secretBackendTtl) {
+        this.secretBackendTtl = secretBackendTtl;
+    }
+
+    public void setVaultService(Provider<VaultService> vaultService) {
+        this.vaultService = vaultService;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        return pending.charAt(position++);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < length && fill()) {
+            int chunk = Math.min(length - count, pending.length() - position);
+            pending.getChars(position, position + chunk, buffer, offset + count);
+            position += chunk;
+            count += chunk;
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int chunk = (int) Math.min(n - skipped, pending.length() - position);
+            position += chunk;
+            skipped += chunk;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return position < pending.length() || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /**
+     * @return false once the source is exhausted
+     */
+    private boolean fill() throws IOException {
+        while (position >= pending.length()) {
+            if (isEndOfStream) {
+                return false;
+            }
+
+            // read a line, terminator included
+            line.setLength(0);
+            int c;
+            while ((c = in.read()) >= 0) {
+                line.append((char) c);
+                if (c == '\n') {
+                    break;
+                }
+            }
+            isEndOfStream = c < 0;
+
+            // the vault is only loaded if a file holds a token
+            pending = line.indexOf(TOKEN_MARKER) < 0 ? line.toString() : substitute(line.toString());
+            position = 0;
+        }
+
+        return true;
+    }
+
+    private String substitute(String text) {
+        if (backend == null) {
+            backend = createSecretBackend();
+        }
+
+        return scanner.process(text, this::getSecret, token -> LOGGER.error("no value in vault for " + token));
+    }
+
+    private String getSecret(String identifier) {
+        return secrets.computeIfAbsent(identifier, key -> Optional.ofNullable(backend.fetch(Collections.singleton(key), null).get(key)))
+                      .orElse(null);
+    }
+
+    private SecretBackend createSecretBackend() {
+        VaultConfiguration configuration = new VaultConfiguration(new File(baseDirectory != null ? baseDirectory : "."));
+        configuration.vaultFile = vaultFile;
+        configuration.vaultPassphraseFile = vaultPassphraseFile;
+        configuration.secretBackend = secretBackend;
+        configuration.secretBackendUrl = secretBackendUrl;
+        configuration.secretBackendTokenFile = secretBackendTokenFile;
+        configuration.secretBackendTtl = secretBackendTtl;
+        if (vaultService != null) {
+            configuration.setVaultService(vaultService.get());
+        }
+        // the vault file is only needed by the file backend
+        configuration.init(VaultManager.isLocalSecretBackend(secretBackend));
+
+        return configuration.getVaultManager().getSecretBackend();
+    }
+}
@@ -0,0 +1,47 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.Map;
+
+/**
+ * On disk layout of the vault, entries being encrypted before reaching the format
+ */
+interface VaultFormat {
+
+    /**
+     * @return version stored (encrypted) along with the vault passphrase
+     */
+    String getVersion();
+
+    /**
+     * @param vaultFile vault file
+     *
+     * @return whether the vault file is laid out with this format
+     */
+    boolean isFormatOf(String vaultFile);
+
+    /**
+     * @param vaultFile vault file
+     *
+     * @return all encrypted entries, null if the vault can't be read
+     */
+    Map<String, String> read(String vaultFile);
+
+    /**
+     * @param vaultFile vault file
+     * @param encryptedKey encrypted identifier
+     *
+     * @return encrypted value or null if not found
+     */
+    default String read(String vaultFile, String encryptedKey) {
+        Map<String, String> content = read(vaultFile);
+        return content != null ? content.get(encryptedKey) : null;
+    }
+
+    /**
+     * replace the vault content atomically, creating the vault if needed
+     *
+     * @param vaultFile vault file
+     * @param content encrypted entries
+     */
+    void write(String vaultFile, Map<String, String> content);
+}
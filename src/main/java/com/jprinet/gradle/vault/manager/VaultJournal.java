@@ -0,0 +1,184 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of vault mutations written next to the vault, replayed over the vault content when loading it.
+ *
+ * Each append is a batch of lines: its records, a put (+encKey---encValue) or a remove (-encKey), then a commit
+ * record (=count|CRC32 of the batch records). Only committed batches are replayed and reading stops at the first torn
+ * or corrupted batch, so that a transaction is applied entirely or not at all; the next append overwrites that tail.
+ */
+final class VaultJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultJournal.class);
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final char PUT = '+';
+    private static final char REMOVE = '-';
+    private static final char COMMIT = '=';
+    private static final String VALUE_SEPARATOR = "---";
+    private static final String CHECKSUM_SEPARATOR = "|";
+    private static final String RECORD_SEPARATOR = "\n";
+
+    private final IOManager ioManager;
+    private final String journalFile;
+
+    VaultJournal(IOManager ioManager, String vaultFile) {
+        this.ioManager = ioManager;
+        this.journalFile = getJournalFile(vaultFile);
+    }
+
+    /**
+     * @param vaultFile vault file
+     *
+     * @return journal file of the vault
+     */
+    static String getJournalFile(String vaultFile) {
+        return vaultFile + JOURNAL_SUFFIX;
+    }
+
+    /**
+     * @return journal file attributes, null if there is no journal
+     */
+    BasicFileAttributes getAttributes() {
+        return ioManager.getFileAttributes(journalFile);
+    }
+
+    /**
+     * @return mutations in order, a null value standing for a removal
+     */
+    Map<String, String> read() {
+        Map<String, String> changes = new LinkedHashMap<>();
+        readCommitted(changes);
+        return changes;
+    }
+
+    /**
+     * @param changes updated with the mutations of the committed batches
+     *
+     * @return length of the committed batches
+     */
+    private long readCommitted(Map<String, String> changes) {
+        if (getAttributes() == null) {
+            return 0;
+        }
+
+        String content;
+        try {
+            // records are ASCII, offsets stay byte offsets whatever a corruption wrote
+            content = new String(Files.readAllBytes(Paths.get(journalFile)), StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read " + journalFile, e);
+        }
+
+        List<String> batch = new ArrayList<>();
+        int committedLength = 0;
+        int start = 0;
+        int end;
+        while ((end = content.indexOf(RECORD_SEPARATOR, start)) >= 0) {
+            String record = content.substring(start, end);
+            start = end + RECORD_SEPARATOR.length();
+            if (record.isEmpty() || record.charAt(0) != COMMIT) {
+                batch.add(record);
+            } else if (isCommitOf(record, batch)) {
+                batch.forEach(committedRecord -> apply(committedRecord, changes));
+                batch.clear();
+                committedLength = start;
+            } else {
+                break;
+            }
+        }
+
+        if (committedLength < content.length()) {
+            LOGGER.warn("ignoring incomplete or corrupted vault journal batch");
+        }
+
+        return committedLength;
+    }
+
+    private boolean isCommitOf(String record, List<String> batch) {
+        int checksumIndex = record.indexOf(CHECKSUM_SEPARATOR);
+        if (checksumIndex < 0) {
+            return false;
+        }
+
+        return record.substring(1, checksumIndex).equals(String.valueOf(batch.size()))
+               && record.substring(checksumIndex + 1).equals(checksum(batch));
+    }
+
+    private void apply(String record, Map<String, String> changes) {
+        if (record.charAt(0) == PUT) {
+            int valueIndex = record.indexOf(VALUE_SEPARATOR);
+            changes.remove(record.substring(1, valueIndex));
+            changes.put(record.substring(1, valueIndex), record.substring(valueIndex + VALUE_SEPARATOR.length()));
+        } else if (record.charAt(0) == REMOVE) {
+            changes.remove(record.substring(1));
+            changes.put(record.substring(1), null);
+        }
+    }
+
+    /**
+     * replay journal over vault content
+     *
+     * @param content vault content to update
+     */
+    void replay(Map<String, String> content) {
+        read().forEach((key, value) -> {
+            if (value != null) {
+                content.put(key, value);
+            } else {
+                content.remove(key);
+            }
+        });
+    }
+
+    /**
+     * durably append mutations as a single batch
+     *
+     * @param changes mutations in order, a null value standing for a removal
+     */
+    void append(Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // a batch torn by a crash would hide the new one
+        BasicFileAttributes attributes = getAttributes();
+        long committedLength = readCommitted(new LinkedHashMap<>());
+        if (attributes != null && committedLength < attributes.size()) {
+            ioManager.truncateFile(journalFile, committedLength);
+        }
+
+        List<String> records = new ArrayList<>();
+        changes.forEach((key, value) -> records.add((value != null) ? PUT + key + VALUE_SEPARATOR + value : REMOVE + key));
+        String commit = COMMIT + String.valueOf(records.size()) + CHECKSUM_SEPARATOR + checksum(records);
+        records.add(commit);
+
+        ioManager.appendToFile(journalFile, records);
+    }
+
+    /**
+     * drop the journal once merged into the vault
+     */
+    void delete() {
+        ioManager.deleteFile(journalFile);
+    }
+
+    private String checksum(List<String> records) {
+        CRC32 crc = new CRC32();
+        crc.update(String.join(RECORD_SEPARATOR, records).getBytes(StandardCharsets.ISO_8859_1));
+        return Long.toHexString(crc.getValue());
+    }
+}
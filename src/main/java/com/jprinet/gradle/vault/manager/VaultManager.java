@@ -1,32 +1,68 @@
 package com.jprinet.gradle.vault.manager;
 
-import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
-import java.util.AbstractMap;
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 public class VaultManager {
 
     private static final String ENV_KEY_VAULT_PASSPHRASE = "VAULT_PASSPHRASE";
-    private static final String SUPPORTED_VERSION = "V1.0";
+    private static final String ENV_KEY_SECRET_BACKEND_TOKEN = "VAULT_TOKEN";
+    private static final String VAULT_ALREADY_PRESENT = " already present";
+    private static final String FINGERPRINT_KEY_USAGE = "fingerprint";
 
-    private static final String VAULT_SEPARATOR = "---";
+    // clear entry holding the key derivation parameters of passphrase based ciphers, not a valid encrypted key
+    static final String KDF_KEY = "$kdf";
+
+    // journal is merged into the vault once it outgrows this ratio of the vault size
+    private static final double JOURNAL_COMPACTION_RATIO = 0.5;
+    private static final long JOURNAL_COMPACTION_MIN_SIZE = 16 * 1024;
 
     private final EncryptionManager encryptionManager;
     private final String vaultPassphrase;
-    private final Map<String, String> vaultContent;
-    private final VaultConfigurationExtension configuration;
+    private final VaultConfiguration configuration;
+
+    private final VaultState vaultState;
+
+    // supported formats, most specific first as the last one is the fallback
+    private final List<VaultFormat> vaultFormats;
+    private final VaultJournal vaultJournal;
 
-    public VaultManager(VaultConfigurationExtension configuration) {
+    public VaultManager(VaultConfiguration configuration) {
         this.configuration = configuration;
+        this.vaultFormats = Arrays.asList(new IndexedVaultFormat(configuration.getIoManager()), new TextVaultFormat(configuration.getIoManager()),
+                                            new Base64VaultFormat(configuration.getIoManager()));
+        this.vaultJournal = new VaultJournal(configuration.getIoManager(), configuration.vaultFile);
         this.vaultPassphrase = getVaultPassphrase(configuration.vaultPassphraseFile);
-        this.vaultContent = getVaultContent();
-        this.encryptionManager = new EncryptionManager(vaultPassphrase);
+
+        // share loaded vault with the other tasks of the build if possible
+        VaultService vaultService = configuration.getVaultService();
+        if (vaultService != null) {
+            this.vaultState = vaultService.getVaultState(configuration.vaultFile, vaultPassphrase);
+        } else {
+            this.vaultState = new VaultState();
+        }
+
+        // shared as well, so that its key is derived once per build
+        synchronized (vaultState) {
+            if (vaultState.legacyCipher == null) {
+                vaultState.legacyCipher = new EncryptionManager(vaultPassphrase);
+            }
+            this.encryptionManager = vaultState.legacyCipher;
+        }
     }
 
     private String getVaultPassphrase(String vaultPassphraseFile) {
@@ -44,24 +80,153 @@ public class VaultManager {
     }
 
     Map<String, String> getVaultContent() {
-        List<String> content = configuration.getIoManager().loadFile(configuration.vaultFile, true);
-        if (content != null) {
-            return content.stream()
-                          .map(this::parse)
-                          .filter(Objects::nonNull)
-                          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        } else {
+        Map<String, String> content = getReadFormat().read(configuration.vaultFile);
+        if (content == null) {
             return Collections.emptyMap();
         }
+
+        // pending mutations, the journal being kept even if journaling has been disabled since
+        vaultJournal.replay(content);
+        return content;
+    }
+
+    private VaultFormat getReadFormat() {
+        return vaultFormats.stream()
+                           .filter(format -> format.isFormatOf(configuration.vaultFile))
+                           .findFirst()
+                           .orElseThrow(() -> new IllegalStateException("unknown vault format"));
+    }
+
+    private VaultFormat getWriteFormat() {
+        if (configuration.vaultFormat != null) {
+            return vaultFormats.stream()
+                               .filter(format -> format.getVersion().startsWith(configuration.vaultFormat.toUpperCase(Locale.ROOT) + "."))
+                               .findFirst()
+                               .orElseThrow(() -> new IllegalStateException("unknown vault format " + configuration.vaultFormat));
+        }
+
+        // keep the current format, new vaults being created with the fallback one
+        return getReadFormat();
+    }
+
+    /**
+     * read a single entry, from the loaded vault if up to date or else from the vault file
+     *
+     * @param encryptedKey encrypted identifier
+     *
+     * @return encrypted value or null if not found
+     */
+    String lookup(String encryptedKey) {
+        synchronized (vaultState) {
+            BasicFileAttributes attributes = configuration.getIoManager().getFileAttributes(configuration.vaultFile);
+            BasicFileAttributes journalAttributes = vaultJournal.getAttributes();
+            if (vaultState.snapshot != null && vaultState.snapshot.isUpToDate(attributes, journalAttributes)) {
+                return vaultState.snapshot.getContent().get(encryptedKey);
+            }
+
+            // journal is bounded by compaction, last mutation wins over the vault
+            if (journalAttributes != null) {
+                Map<String, String> changes = vaultJournal.read();
+                if (changes.containsKey(encryptedKey)) {
+                    return changes.get(encryptedKey);
+                }
+            }
+
+            return getReadFormat().read(configuration.vaultFile, encryptedKey);
+        }
+    }
+
+    /**
+     * get the vault content, loading it only if the vault or journal file changed (mtime or size) since the last call
+     *
+     * @return vault snapshot
+     */
+    VaultSnapshot getVaultSnapshot() {
+        synchronized (vaultState) {
+            BasicFileAttributes attributes = configuration.getIoManager().getFileAttributes(configuration.vaultFile);
+            BasicFileAttributes journalAttributes = vaultJournal.getAttributes();
+            if (vaultState.snapshot == null || !vaultState.snapshot.isUpToDate(attributes, journalAttributes)) {
+                vaultState.snapshot = new VaultSnapshot(getVaultContent(), attributes, journalAttributes);
+            }
+
+            return vaultState.snapshot;
+        }
+    }
+
+    /**
+     * index the vault secrets, decrypted on first use, reusing the previous index if the vault did not change
+     *
+     * @return secret index
+     */
+    SecretIndex resolve() {
+        return resolve(null);
+    }
+
+    /**
+     * @param metrics metrics to update with the vault loading time or the index reuse, may be null
+     *
+     * @return secret index
+     */
+    SecretIndex resolve(ProcessingMetrics metrics) {
+        synchronized (vaultState) {
+            long start = System.nanoTime();
+            VaultSnapshot snapshot = getVaultSnapshot();
+            if (vaultState.secretIndex == null || !vaultState.secretIndex.isResolvedFrom(snapshot)) {
+                vaultState.wipe();
+                VaultCipher cipher = getCipher();
+                vaultState.secretIndex = new SecretIndex(snapshot, cipher, getReservedKeys(cipher));
+                if (metrics != null) {
+                    ProcessingMetrics.stop(metrics.decryptTime, start);
+                }
+            } else if (metrics != null) {
+                metrics.cacheHits.increment();
+            }
+
+            return vaultState.secretIndex;
+        }
+    }
+
+    /**
+     * forget the secrets and keys loaded from the vault, to be called once done with a vault state not shared
+     * through the build service
+     */
+    public void wipe() {
+        vaultState.clear();
+    }
+
+    /**
+     * @return backend the processed secrets are read from
+     */
+    SecretBackend getSecretBackend() {
+        String secretBackend = configuration.secretBackend;
+        if (isLocalSecretBackend(secretBackend)) {
+            return new FileSecretBackend(this);
+        } else if (HttpSecretBackend.NAME.equalsIgnoreCase(secretBackend)) {
+            if (configuration.secretBackendUrl == null) {
+                throw new IllegalStateException("no secretBackendUrl set for the " + HttpSecretBackend.NAME + " secret backend");
+            }
+            return new HttpSecretBackend(configuration.secretBackendUrl, getSecretBackendToken(), configuration.secretBackendTtl, vaultState);
+        }
+
+        throw new IllegalStateException("unknown secret backend " + secretBackend);
     }
 
-    private Map.Entry<String, String> parse(String line) {
-        String[] tokens = line.split(VAULT_SEPARATOR);
-        if (tokens.length == 2) {
-            return new AbstractMap.SimpleEntry<>(tokens[0], tokens[1]);
+    private String getSecretBackendToken() {
+        // read environment variable
+        String token = configuration.getIoManager().getEnvironmentVariable(ENV_KEY_SECRET_BACKEND_TOKEN);
+        if ((null == token || token.isEmpty()) && configuration.secretBackendTokenFile != null) {
+            // read file
+            List<String> tokenAsList = configuration.getIoManager().loadFile(configuration.secretBackendTokenFile, false);
+            if (null != tokenAsList) {
+                token = String.join("", tokenAsList).trim();
+            }
+        }
+
+        if (null == token || token.isEmpty()) {
+            throw new IllegalStateException("no secret backend token, set " + ENV_KEY_SECRET_BACKEND_TOKEN + " or secretBackendTokenFile");
         }
 
-        return null;
+        return token;
     }
 
     /**
@@ -72,30 +237,96 @@ public class VaultManager {
             throw new IllegalStateException("unable to create vault without passphrase");
         }
 
-        String encryptedVaultPassphrase = encryptionManager.encrypt(vaultPassphrase);
-        String encryptedVersion = encryptionManager.encrypt(SUPPORTED_VERSION);
+        if (configuration.getIoManager().getFileAttributes(configuration.vaultFile) != null) {
+            throw new IllegalStateException(configuration.vaultFile + VAULT_ALREADY_PRESENT);
+        }
+
+        save(new HashMap<>(), getTargetCipher(encryptionManager));
+    }
+
+    /**
+     * @return cipher of the vault, keys being derived once per build for passphrase based ciphers
+     */
+    VaultCipher getCipher() {
+        synchronized (vaultState) {
+            // resolved once per loaded vault, sparing the lookup and its file checks
+            if (vaultState.snapshot == null || vaultState.cipherSnapshot != vaultState.snapshot) {
+                vaultState.cipherParameters = lookup(KDF_KEY);
+                vaultState.cipherSnapshot = vaultState.snapshot;
+            }
+
+            String parameters = vaultState.cipherParameters;
+            if (parameters == null) {
+                return encryptionManager;
+            }
+
+            if (vaultState.cipher == null || !parameters.equals(vaultState.cipher.getParameters())) {
+                vaultState.cipher = AesGcmVaultCipher.create(vaultPassphrase, parameters);
+            }
+
+            return vaultState.cipher;
+        }
+    }
+
+    private VaultCipher getTargetCipher(VaultCipher cipher) {
+        String encryption = configuration.vaultEncryption;
+        if (encryption == null || encryption.equalsIgnoreCase(cipher.getName())) {
+            return cipher;
+        }
+
+        if (AesGcmVaultCipher.NAME.equalsIgnoreCase(encryption)) {
+            return AesGcmVaultCipher.generate(vaultPassphrase);
+        } else if (EncryptionManager.NAME.equalsIgnoreCase(encryption)) {
+            return encryptionManager;
+        }
 
-        Map<String, String> content = new HashMap<>();
-        content.put(encryptedVaultPassphrase, encryptedVersion);
+        throw new IllegalStateException("unknown vault encryption " + encryption);
+    }
 
-        configuration.getIoManager().createFile(configuration.vaultFile, format(content), true);
+    private Set<String> getReservedKeys(VaultCipher cipher) {
+        return new HashSet<>(Arrays.asList(cipher.encryptKey(vaultPassphrase), KDF_KEY));
     }
 
     /**
      * check vault passphrase is valid
      */
     public void assertVaultAccess() {
-        if(vaultContent != null && !vaultContent.isEmpty()){
-            String encryptedVaultPassphrase = encryptionManager.encrypt(vaultPassphrase);
-            String encryptedVersion = encryptionManager.encrypt(SUPPORTED_VERSION);
-            if (encryptedVersion.equals(vaultContent.get(encryptedVaultPassphrase))) {
-               return;
+        synchronized (vaultState) {
+            BasicFileAttributes attributes = configuration.getIoManager().getFileAttributes(configuration.vaultFile);
+            if (vaultState.authorizedStamp != null && vaultState.authorizedStamp.isUpToDate(attributes)) {
+                // already checked against this vault content during the build
+                return;
+            }
+
+            // the vault changed since the last check, so may have its cipher
+            vaultState.cipherSnapshot = null;
+
+            // single entry read, the whole vault is only loaded when needed
+            VaultCipher cipher = getCipher();
+            String passphraseKey = cipher.encryptKey(vaultPassphrase);
+            String encryptedVersion = lookup(passphraseKey);
+            if (encryptedVersion != null && isSupportedVersion(cipher, passphraseKey, encryptedVersion)) {
+                vaultState.authorizedStamp = new FileStamp(attributes);
+                return;
             }
         }
 
         throw new IllegalStateException("vault access denied");
     }
 
+    private boolean isSupportedVersion(VaultCipher cipher, String passphraseKey, String encryptedVersion) {
+        String version = decryptVersion(cipher, passphraseKey, encryptedVersion);
+        return vaultFormats.stream().anyMatch(format -> format.getVersion().equals(version));
+    }
+
+    private String decryptVersion(VaultCipher cipher, String passphraseKey, String encryptedVersion) {
+        try {
+            return cipher.decryptValue(passphraseKey, encryptedVersion);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
     /**
      * add secret to vault
      */
@@ -107,7 +338,21 @@ public class VaultManager {
         String identifier = configuration.getIoManager().ask("Enter secret identifier:");
         String value = configuration.getIoManager().ask("Enter secret value:");
 
-        addSecretInternal(identifier, value);
+        addSecret(identifier, value);
+    }
+
+    /**
+     * add secret to vault, then reprocess the resources still holding its tokens
+     *
+     * @param identifier secret identifier
+     * @param value secret value
+     */
+    public void addSecret(String identifier, String value) {
+        // check vault access
+        assertVaultAccess();
+
+        beginTransaction().addSecret(identifier, value).commit();
+        configuration.getVaultProcessor().processUsages(Collections.singleton(identifier));
     }
 
     /**
@@ -118,32 +363,32 @@ public class VaultManager {
         assertVaultAccess();
 
         // read missing entries
-        List<String> missingSecrets = configuration.getIoManager().loadFile(VaultProcessor.FILE_MISSING_SECRETS, false);
+        List<String> missingSecrets = configuration.getIoManager().loadFile(configuration.missingSecretsFile, false);
         if (null != missingSecrets && !missingSecrets.isEmpty()) {
+            // vault is only saved once all entries are valid
+            VaultTransaction transaction = beginTransaction();
+            List<String> identifiers = new ArrayList<>();
             missingSecrets.forEach(line -> {
+                // token locations are listed as comments
+                if (line.trim().isEmpty() || line.startsWith(VaultProcessor.FILE_MISSING_SECRETS_COMMENT)) {
+                    return;
+                }
+
                 String[] tokens = line.split(VaultProcessor.FILE_MISSING_SECRETS_SEPARATOR);
                 if (tokens.length == 2) {
-                    addSecretInternal(tokens[0], tokens[1]);
+                    transaction.addSecret(tokens[0], tokens[1]);
+                    identifiers.add(tokens[0]);
                 } else {
                     throw new IllegalStateException("unable to process " + line);
                 }
             });
+            transaction.commit();
+            configuration.getVaultProcessor().processUsages(identifiers);
         } else {
             throw new IllegalStateException("no missing secret found");
         }
     }
 
-    private void addSecretInternal(String identifier, String value) {
-        String encryptedIdentifier = encryptionManager.encrypt(identifier);
-        String encryptedValue = encryptionManager.encrypt(value);
-
-        // add secret
-        vaultContent.put(encryptedIdentifier, encryptedValue);
-
-        // save vault
-        configuration.getIoManager().saveFile(configuration.vaultFile, format(vaultContent), true);
-    }
-
     /**
      * remove secret from vault
      */
@@ -153,21 +398,214 @@ public class VaultManager {
 
         // collect user data
         String identifier = configuration.getIoManager().ask("Enter secret identifier:");
-        String encryptedIdentifier = encryptionManager.encrypt(identifier);
 
-        // remove secret
-        vaultContent.remove(encryptedIdentifier);
+        beginTransaction().removeSecret(identifier).commit();
+    }
+
+    /**
+     * import secrets from a plaintext file in a single vault update
+     *
+     * @param secretsFile .properties, .json or .csv file of identifier/secret
+     * @param includePattern identifiers to import, null for all
+     */
+    public void importSecrets(String secretsFile, String includePattern) {
+        // check vault access
+        assertVaultAccess();
+
+        Pattern include = compileIncludePattern(includePattern);
+        VaultTransaction transaction = beginTransaction();
+        List<String> identifiers = new ArrayList<>();
+        for (Map.Entry<String, String> secret : SecretsFile.read(Paths.get(secretsFile)).entrySet()) {
+            if (include.matcher(secret.getKey()).matches()) {
+                transaction.addSecret(secret.getKey(), secret.getValue());
+                identifiers.add(secret.getKey());
+            }
+        }
+        transaction.commit();
+        configuration.getVaultProcessor().processUsages(identifiers);
+
+        System.out.println(identifiers.size() + " secret(s) imported");
+    }
+
+    /**
+     * export decrypted secrets to a plaintext file
+     *
+     * @param secretsFile .properties, .json or .csv file of identifier/secret
+     * @param includePattern identifiers to export, null for all
+     */
+    public void exportSecrets(String secretsFile, String includePattern) {
+        // check vault access
+        assertVaultAccess();
+
+        Pattern include = compileIncludePattern(includePattern);
+        Map<String, String> secrets = new TreeMap<>();
+        resolve().forEach((identifier, value) -> {
+            if (include.matcher(identifier).matches()) {
+                secrets.put(identifier, value);
+            }
+        });
+        SecretsFile.write(configuration.getIoManager(), Paths.get(secretsFile), secrets);
+
+        System.out.println(secrets.size() + " secret(s) exported in clear text to " + secretsFile);
+    }
+
+    /**
+     * remove secrets in a single vault update
+     *
+     * @param secretsFile .properties, .json or .csv file listing the identifiers to remove, null to select them by pattern only
+     * @param includePattern identifiers to remove, null for all the identifiers of the file
+     */
+    public void removeSecrets(String secretsFile, String includePattern) {
+        if (secretsFile == null && includePattern == null) {
+            throw new IllegalStateException("no secret selected, a file or an include pattern is required");
+        }
+
+        // check vault access
+        assertVaultAccess();
+
+        Set<String> identifiers = new TreeSet<>();
+        if (secretsFile != null) {
+            identifiers.addAll(SecretsFile.read(Paths.get(secretsFile)).keySet());
+        } else {
+            resolve().forEach((identifier, value) -> identifiers.add(identifier));
+        }
+
+        Pattern include = compileIncludePattern(includePattern);
+        VaultTransaction transaction = beginTransaction();
+        int count = 0;
+        for (String identifier : identifiers) {
+            if (include.matcher(identifier).matches()) {
+                transaction.removeSecret(identifier);
+                count++;
+            }
+        }
+        transaction.commit();
+
+        System.out.println(count + " secret(s) removed");
+    }
+
+    private Pattern compileIncludePattern(String includePattern) {
+        return Pattern.compile(includePattern != null ? includePattern : ".*");
+    }
+
+    /**
+     * start a batch of vault mutations, the vault being saved once on commit
+     *
+     * @return vault transaction
+     */
+    public VaultTransaction beginTransaction() {
+        return new VaultTransaction(this, getCipher());
+    }
+
+    /**
+     * persist mutations, appending them to the journal if enabled or else rewriting the vault
+     *
+     * @param changes encrypted mutations in order, a null value standing for a removal
+     */
+    void commit(Map<String, String> changes) {
+        synchronized (vaultState) {
+            // loaded first, so that the cipher is resolved from the current vault
+            VaultSnapshot snapshot = getVaultSnapshot();
+            VaultCipher cipher = getCipher();
+            VaultCipher targetCipher = getTargetCipher(cipher);
+            if (targetCipher != cipher) {
+                // encryption switch, the whole vault is re-encrypted, journal included
+                Map<String, String> content = new HashMap<>(snapshot.getContent());
+                apply(changes, content);
+                save(reencrypt(content, cipher, targetCipher), targetCipher);
+                return;
+            }
+
+            BasicFileAttributes attributes = configuration.getIoManager().getFileAttributes(configuration.vaultFile);
+            if (Boolean.TRUE.equals(configuration.vaultJournal) && attributes != null) {
+                Map<String, String> content = new HashMap<>(snapshot.getContent());
+                apply(changes, content);
+                vaultJournal.append(changes);
+
+                // tasks sharing the state see the appended content whatever the file time resolution
+                BasicFileAttributes journalAttributes = vaultJournal.getAttributes();
+                vaultState.snapshot = new VaultSnapshot(content, attributes, journalAttributes);
+                vaultState.cipherSnapshot = vaultState.snapshot;
+                if (journalAttributes != null && journalAttributes.size() > JOURNAL_COMPACTION_MIN_SIZE
+                    && journalAttributes.size() > attributes.size() * JOURNAL_COMPACTION_RATIO) {
+                    compact();
+                }
+            } else {
+                Map<String, String> content = new HashMap<>(snapshot.getContent());
+                apply(changes, content);
+                save(content, cipher);
+            }
+        }
+    }
+
+    private void apply(Map<String, String> changes, Map<String, String> content) {
+        changes.forEach((key, value) -> {
+            if (value != null) {
+                content.put(key, value);
+            } else {
+                content.remove(key);
+            }
+        });
+    }
+
+    private Map<String, String> reencrypt(Map<String, String> content, VaultCipher cipher, VaultCipher targetCipher) {
+        Set<String> reservedKeys = getReservedKeys(cipher);
+        Map<String, String> reencryptedContent = new HashMap<>(content.size() * 2);
+        content.forEach((key, value) -> {
+            if (!reservedKeys.contains(key)) {
+                Map.Entry<String, String> secret = cipher.decryptEntry(key, value);
+                reencryptedContent.put(targetCipher.encryptKey(secret.getKey()), targetCipher.encryptValue(secret.getKey(), secret.getValue()));
+            }
+        });
+
+        return reencryptedContent;
+    }
 
-        // save vault
-        configuration.getIoManager().saveFile(configuration.vaultFile, format(vaultContent), true);
+    /**
+     * merge the journal into a fresh vault
+     */
+    private void compact() {
+        save(getVaultSnapshot().getContent(), getCipher());
     }
 
-    private List<String> format(Map<String, String> content) {
-        List<String> output = new ArrayList<>();
-        for (Map.Entry<String, String> entry : content.entrySet()) {
-            output.add(entry.getKey() + VAULT_SEPARATOR + entry.getValue());
+    /**
+     * save vault content, replacing the vault file atomically and dropping the journal merged into it
+     *
+     * @param vaultContent encrypted vault entries
+     * @param cipher cipher the entries are encrypted with
+     */
+    private void save(Map<String, String> vaultContent, VaultCipher cipher) {
+        synchronized (vaultState) {
+            VaultFormat format = getWriteFormat();
+
+            // the version stored with the passphrase follows the format, V1 vaults are migrated on their first write
+            // an unchanged version keeps its encrypted value, so that line based vaults only change on updated entries
+            Map<String, String> content = new HashMap<>(vaultContent);
+            String passphraseKey = cipher.encryptKey(vaultPassphrase);
+            String encryptedVersion = content.get(passphraseKey);
+            if (encryptedVersion == null || !format.getVersion().equals(decryptVersion(cipher, passphraseKey, encryptedVersion))) {
+                content.put(passphraseKey, cipher.encryptValue(vaultPassphrase, format.getVersion()));
+            }
+            if (cipher.getParameters() != null) {
+                content.put(KDF_KEY, cipher.getParameters());
+            } else {
+                content.remove(KDF_KEY);
+            }
+
+            format.write(configuration.vaultFile, content);
+            // a crash before deletion is harmless, replaying the journal over its own merge gives the same content
+            vaultJournal.delete();
+
+            // tasks sharing the state see the saved content, even if a rewrite keeps the vault size and mtime
+            vaultState.snapshot = new VaultSnapshot(content, configuration.getIoManager().getFileAttributes(configuration.vaultFile), null);
+            vaultState.cipherSnapshot = vaultState.snapshot;
+            vaultState.cipherParameters = cipher.getParameters();
+
+            // keep derived keys for the rest of the build
+            if (cipher != encryptionManager) {
+                vaultState.cipher = cipher;
+            }
         }
-        return output;
     }
 
     /**
@@ -179,17 +617,67 @@ public class VaultManager {
 
         // collect user data
         String identifier = configuration.getIoManager().ask("Enter secret identifier:");
-        String encryptedIdentifier = encryptionManager.encrypt(identifier);
+        VaultCipher cipher = getCipher();
+        String encryptedIdentifier = cipher.encryptKey(identifier);
 
         // display secret
-        System.out.println(encryptionManager.decrypt(vaultContent.getOrDefault(encryptedIdentifier, "NOT FOUND")));
+        String encryptedValue = lookup(encryptedIdentifier);
+        System.out.println(encryptedValue != null ? cipher.decryptValue(encryptedIdentifier, encryptedValue) : "NOT FOUND");
+    }
+
+    /**
+     * @param vaultFile vault file
+     *
+     * @return file holding the pending mutations of the vault
+     */
+    public static String getVaultJournalFile(String vaultFile) {
+        return VaultJournal.getJournalFile(vaultFile);
+    }
+
+    /**
+     * @param secretBackend secret backend option
+     *
+     * @return whether secrets are read from the vault file
+     */
+    public static boolean isLocalSecretBackend(String secretBackend) {
+        return secretBackend == null || FileSecretBackend.NAME.equalsIgnoreCase(secretBackend);
+    }
+
+    /**
+     * @param directory cache directory
+     *
+     * @return resolution cache bound to the current vault content and passphrase
+     */
+    ResolutionCache openResolutionCache(String directory) {
+        if (null == vaultPassphrase || vaultPassphrase.isEmpty()) {
+            throw new IllegalStateException("unable to derive key without passphrase");
+        }
+
+        Path vault = Paths.get(configuration.vaultFile);
+        Path journal = Paths.get(VaultJournal.getJournalFile(configuration.vaultFile));
+        byte[] vaultDigest = configuration.getIoManager().digest(Arrays.asList(vault, journal));
+        byte[] key = getCipher().deriveKey(ResolutionCache.KEY_USAGE);
+
+        return new ResolutionCache(configuration.getIoManager(), Paths.get(directory), key, vaultDigest, ResolutionCache.MAX_SIZE);
     }
 
-    String encrypt(String text) {
-        return encryptionManager.encrypt(text);
+    /**
+     * @return one-way fingerprint derived from the vault keys, changing whenever the passphrase or the vault salt changes, null without passphrase
+     */
+    public String getVaultPassphraseFingerprint() {
+        if (null == vaultPassphrase || vaultPassphrase.isEmpty()) {
+            return null;
+        }
+
+        return IOManager.toHex(getCipher().deriveKey(FINGERPRINT_KEY_USAGE));
     }
 
-    String decrypt(String text) {
-        return encryptionManager.decrypt(text);
+    /**
+     * @param identifier secret identifier
+     *
+     * @return vault key of the identifier
+     */
+    String encrypt(String identifier) {
+        return getCipher().encryptKey(identifier);
     }
 }
@@ -0,0 +1,125 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Git merge driver merging vaults entry by entry, without the passphrase as entries stay encrypted:
+ * an entry updated, added or removed on a single side is taken from that side, an entry updated differently on both
+ * sides is a conflict and keeps the current value.
+ * The merged vault keeps the layout of the current one, see the README for the git configuration.
+ * Journaled updates are not merged, a vault with a journal is refused until the journal is compacted into it.
+ */
+public final class VaultMergeDriver {
+
+    private static final int EXIT_CONFLICT = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final List<VaultFormat> vaultFormats;
+
+    VaultMergeDriver(IOManager ioManager) {
+        this.vaultFormats = Arrays.asList(new IndexedVaultFormat(ioManager), new TextVaultFormat(ioManager), new Base64VaultFormat(ioManager));
+    }
+
+    /**
+     * git merge driver entry point, merge=vault being declared as: java ... VaultMergeDriver %O %A %B %P
+     *
+     * @param args ancestor, current and other versions of the vault, the result being written to the current one,
+     *             and optionally the vault path in the working tree
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("usage: VaultMergeDriver <ancestor> <current> <other> [<vault>]");
+            System.exit(EXIT_USAGE);
+        }
+
+        VaultMergeDriver mergeDriver = new VaultMergeDriver(new IOManager());
+        if (args.length == 4 && mergeDriver.hasJournal(args[3])) {
+            // the journal entries would be lost or replayed over the merge result
+            System.err.println("vault " + args[3] + " has a journal, compact it before merging");
+            System.exit(EXIT_CONFLICT);
+        }
+
+        boolean isMerged = mergeDriver.merge(args[0], args[1], args[2]);
+        System.exit(isMerged ? 0 : EXIT_CONFLICT);
+    }
+
+    /**
+     * @param vaultFile vault path in the working tree
+     *
+     * @return true if updates are pending in the vault journal
+     */
+    boolean hasJournal(String vaultFile) {
+        return new File(VaultJournal.getJournalFile(vaultFile)).length() > 0;
+    }
+
+    /**
+     * @param ancestorFile common ancestor of both versions, empty if none
+     * @param currentFile current version, replaced with the merge result
+     * @param otherFile version to merge
+     *
+     * @return false if some entries conflict
+     */
+    boolean merge(String ancestorFile, String currentFile, String otherFile) {
+        Map<String, String> ancestor = read(ancestorFile);
+        Map<String, String> current = read(currentFile);
+        Map<String, String> other = read(otherFile);
+
+        Map<String, String> merged = new HashMap<>(current);
+        Set<String> conflicts = new TreeSet<>();
+        Set<String> keys = new TreeSet<>(ancestor.keySet());
+        keys.addAll(current.keySet());
+        keys.addAll(other.keySet());
+        for (String key : keys) {
+            String ancestorValue = ancestor.get(key);
+            String currentValue = current.get(key);
+            String otherValue = other.get(key);
+            if (Objects.equals(currentValue, otherValue) || Objects.equals(otherValue, ancestorValue)) {
+                continue;
+            }
+
+            if (Objects.equals(currentValue, ancestorValue)) {
+                // only changed on the other side, null for a removal
+                if (otherValue != null) {
+                    merged.put(key, otherValue);
+                } else {
+                    merged.remove(key);
+                }
+            } else {
+                conflicts.add(key);
+            }
+        }
+
+        getFormat(currentFile).write(currentFile, merged);
+        conflicts.forEach(key -> System.err.println("conflicting vault entry " + key));
+
+        return conflicts.isEmpty();
+    }
+
+    private Map<String, String> read(String vaultFile) {
+        // git provides an empty ancestor when both sides added the vault
+        if (new File(vaultFile).length() == 0) {
+            return new HashMap<>();
+        }
+
+        Map<String, String> content = getFormat(vaultFile).read(vaultFile);
+        if (content == null) {
+            throw new IllegalStateException("unable to read " + vaultFile);
+        }
+
+        return content;
+    }
+
+    private VaultFormat getFormat(String vaultFile) {
+        return vaultFormats.stream()
+                           .filter(format -> format.isFormatOf(vaultFile))
+                           .findFirst()
+                           .orElseThrow(() -> new IllegalStateException("unknown vault format"));
+    }
+}
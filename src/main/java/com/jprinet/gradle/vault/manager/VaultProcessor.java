@@ -1,33 +1,47 @@
 package com.jprinet.gradle.vault.manager;
 
-import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class VaultProcessor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VaultProcessor.class);
 
-    private static final String TOKEN_SEPARATOR = "@@";
-    private static final String TOKEN_PREFIX = "vault";
-
-    static final String FILE_MISSING_SECRETS = ".vault_missing_secrets";
     static final String FILE_MISSING_SECRETS_SEPARATOR = ";";
+    static final String FILE_MISSING_SECRETS_COMMENT = "#";
     private static final String FILE_MISSING_SECRETS_SUFFIX = "fill_me";
 
-    private final VaultConfigurationExtension configuration;
+    private static final byte[] TOKEN_MARKER = (TokenScanner.TOKEN_SEPARATOR + TokenScanner.TOKEN_PREFIX).getBytes(StandardCharsets.UTF_8);
+
+    private final VaultConfiguration configuration;
 
-    public VaultProcessor(VaultConfigurationExtension configuration) {
+    public VaultProcessor(VaultConfiguration configuration) {
         this.configuration = configuration;
     }
 
@@ -35,66 +49,400 @@ public class VaultProcessor {
      * replace templates matching vault entry from file in path
      */
     public void process() {
-        Pattern p = Pattern.compile(configuration.resourcePattern);
+        ResourceFilter filter = new ResourceFilter(configuration);
+        ProcessingMetrics metrics = new ProcessingMetrics();
 
         try {
-            Set<String> missingSecrets = new HashSet<>();
-
-            Files.walk(Paths.get(configuration.resourcePath))
-                 .filter(Files::isRegularFile)
-                 .filter(path -> p.matcher(path.toString()).matches())
-                 .forEach(path -> process(path, missingSecrets));
-
-            if (!missingSecrets.isEmpty()) {
-                try {
-                    configuration.getIoManager().createFile(FILE_MISSING_SECRETS, new ArrayList<>(missingSecrets), false);
-                } catch (IllegalStateException e) {
-                    configuration.getIoManager().saveFile(FILE_MISSING_SECRETS, new ArrayList<>(missingSecrets), false);
-                }
-            }
+            long walkStart = System.nanoTime();
+            List<Path> paths = findResources(filter, metrics);
+            ProcessingMetrics.stop(metrics.walkTime, walkStart);
+
+            UsageIndex index = UsageIndex.load(configuration);
+            process(paths, index, metrics);
+            index.retain(paths);
+            writeMissingSecrets(index);
+            index.save();
         } catch (IOException e) {
             throw new IllegalStateException("unable to process files", e);
         }
+
+        metrics.close();
+        LOGGER.info(metrics.getSummary());
+        if (configuration.reportFile != null) {
+            writeReport(metrics);
+        }
     }
 
-    private void process(Path path, Set<String> missingSecrets) {
-        List<String> output = new ArrayList<>();
+    /**
+     * reprocess the resources referencing updated secrets, as long as they still hold their tokens
+     *
+     * @param identifiers updated secrets
+     */
+    public void processUsages(Collection<String> identifiers) {
+        // resources resolved from a remote backend don't depend on the vault
+        if (!VaultManager.isLocalSecretBackend(configuration.secretBackend)) {
+            return;
+        }
+
+        UsageIndex index = UsageIndex.load(configuration);
+        Set<String> updatedIdentifiers = new HashSet<>(identifiers);
+
+        // processed resources don't hold their tokens anymore, they have to be generated again
+        index.getFiles(usage -> usage.isResolved() && updatedIdentifiers.contains(usage.getIdentifier()))
+             .forEach(path -> LOGGER.warn(configuration.relativize(path) + " holds a previous value of an updated secret, run processResources and processSecrets again"));
+
+        List<Path> paths = index.getFiles(usage -> !usage.isResolved() && updatedIdentifiers.contains(usage.getIdentifier()))
+                                .stream()
+                                .filter(Files::isRegularFile)
+                                .sorted()
+                                .collect(Collectors.toList());
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        ProcessingMetrics metrics = new ProcessingMetrics();
+        process(paths, index, metrics);
+        writeMissingSecrets(index);
+        index.save();
+
+        metrics.close();
+        LOGGER.info(metrics.getSummary());
+    }
+
+    /**
+     * print the locations of the tokens found by the last processing, by secret identifier
+     *
+     * @param includePattern identifiers to report, null for all
+     */
+    public void printUsages(String includePattern) {
+        if (!Files.exists(Paths.get(configuration.usageIndexFile))) {
+            System.out.println("no usage index found, run processSecrets first");
+            return;
+        }
+
+        Pattern include = Pattern.compile(includePattern != null ? includePattern : ".*");
+        Map<String, List<UsageIndex.Usage>> usages = UsageIndex.load(configuration).getUsages(usage -> include.matcher(usage.getIdentifier()).matches());
+        usages.forEach((identifier, locations) -> {
+            System.out.println(identifier);
+            locations.forEach(usage -> System.out.println("  " + configuration.relativize(usage.getFile()) + ":" + usage.getLine()
+                                                          + (usage.isResolved() ? "" : " (unresolved)")));
+        });
+        System.out.println(usages.size() + " secret(s) referenced");
+    }
+
+    /**
+     * replace templates in the given resources only, resources unchanged since they were fully resolved being skipped
+     *
+     * @param paths resources to process
+     * @param index usage index, updated with the processed resources
+     * @param metrics processing metrics
+     */
+    void process(List<Path> paths, UsageIndex index, ProcessingMetrics metrics) {
+        ForkJoinPool pool = configuration.parallelism > 1 ? new ForkJoinPool(configuration.parallelism) : null;
+
+        try {
+            // with the resolution cache, the vault is only decrypted if a template is not cached
+            // remote secrets can change without the vault changing, they are never cached
+            ResolutionCache cache = Boolean.TRUE.equals(configuration.resolutionCache) && VaultManager.isLocalSecretBackend(configuration.secretBackend)
+                                    ? configuration.getVaultManager().openResolutionCache(configuration.resolutionCacheDirectory)
+                                    : null;
+
+            // pre-scan, collecting the tokens referenced by the templates left to process
+            Set<String> referencedTokens = ConcurrentHashMap.newKeySet();
+            List<Template> templates = run(pool, () -> stream(paths, pool)
+                    .map(path -> scan(path, index, referencedTokens, metrics, cache))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
 
-        // loadFile vault
-        Map<String, String> vaultContent = configuration.getVaultManager().getVaultContent();
+            if (!templates.isEmpty()) {
+                // single batch of the referenced secrets only, the others are never decrypted nor fetched
+                Map<String, String> secrets = configuration.getVaultManager().getSecretBackend().fetch(referencedTokens, metrics);
+                metrics.secretsDecrypted.add(secrets.size());
+
+                run(pool, () -> {
+                    stream(templates, pool).forEach(template -> process(template, secrets, index, metrics, cache));
+                    return null;
+                });
+            }
+
+            if (cache != null) {
+                cache.evict();
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
 
-        // read file
-        List<String> content = configuration.getIoManager().loadFile(path.toString(), false);
-        if (content != null && !content.isEmpty()) {
-            content.forEach(line -> output.add(getProcessedLine(line, vaultContent, missingSecrets)));
+    /**
+     * @param index usage index, nothing is written if no token is left unresolved
+     */
+    void writeMissingSecrets(UsageIndex index) {
+        Map<String, List<UsageIndex.Usage>> missingSecrets = index.getUsages(usage -> !usage.isResolved());
+        if (missingSecrets.isEmpty()) {
+            return;
         }
 
-        // update file
-        configuration.getIoManager().saveFile(path.toString(), output, false);
+        // entries sorted to get a stable output whatever the processing order, each one preceded by its locations
+        List<String> sortedMissingSecrets = new ArrayList<>();
+        missingSecrets.forEach((identifier, usages) -> {
+            usages.forEach(usage -> sortedMissingSecrets.add(FILE_MISSING_SECRETS_COMMENT + " " + configuration.relativize(usage.getFile()) + ":" + usage.getLine()));
+            sortedMissingSecrets.add(identifier + FILE_MISSING_SECRETS_SEPARATOR + FILE_MISSING_SECRETS_SUFFIX);
+        });
+        try {
+            configuration.getIoManager().createFile(configuration.missingSecretsFile, sortedMissingSecrets, false);
+        } catch (IllegalStateException e) {
+            configuration.getIoManager().saveFile(configuration.missingSecretsFile, sortedMissingSecrets, false);
+        }
     }
 
-    private String getProcessedLine(String line, Map<String, String> vaultContent, Set<String> missingSecrets) {
-        if (line.contains(TOKEN_SEPARATOR)) {
-            String[] tokens = line.split(TOKEN_SEPARATOR);
-            for (String token : tokens) {
-                if (token.startsWith(TOKEN_PREFIX)) {
-                    String encryptedKey = configuration.getVaultManager().encrypt(token);
-                    String encryptedValue = vaultContent.get(encryptedKey);
-                    if (encryptedValue != null && !encryptedValue.isEmpty()) {
-                        line = line.replaceAll(getProtectedKey(token), configuration.getVaultManager().decrypt(encryptedValue));
-                    } else {
-                        LOGGER.error("no value in vault for " + token);
-                        missingSecrets.add(token + FILE_MISSING_SECRETS_SEPARATOR + FILE_MISSING_SECRETS_SUFFIX);
-                    }
+    private List<Path> findResources(ResourceFilter filter, ProcessingMetrics metrics) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        Path root = filter.getRoot();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                // subtrees which can't hold any resource are never descended
+                if (!directory.equals(root) && !filter.isTraversable(directory)) {
+                    metrics.directoriesPruned.increment();
+                    return FileVisitResult.SKIP_SUBTREE;
                 }
+
+                return FileVisitResult.CONTINUE;
             }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                // links are not followed while walking but linked files are processed
+                if ((attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(file))) && filter.isResource(file)) {
+                    paths.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return paths;
+    }
+
+    private void writeReport(ProcessingMetrics metrics) {
+        Path report = Paths.get(configuration.reportFile);
+        try {
+            Files.createDirectories(report.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to create report directory for " + report, e);
         }
+        configuration.getIoManager().saveFileAtomically(report, metrics.toJson());
+    }
 
-        return line;
+    private static <T> Stream<T> stream(List<T> items, ForkJoinPool pool) {
+        return pool != null && items.size() > 1 ? items.parallelStream() : items.stream();
     }
 
-    private String getProtectedKey(String key) {
-        return TOKEN_SEPARATOR + key + TOKEN_SEPARATOR;
+    private static <T> T run(ForkJoinPool pool, Supplier<T> task) {
+        if (pool == null) {
+            return task.get();
+        }
+
+        // parallel streams run in the pool they are started from
+        try {
+            return pool.submit(task::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while processing files", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("unable to process files", e.getCause());
+        }
     }
-}
 
+    /**
+     * @param path candidate resource
+     * @param index usage index, updated with the files left untouched
+     * @param referencedTokens tokens referenced by the templates to process
+     * @param metrics processing metrics
+     * @param cache resolution cache, may be null
+     *
+     * @return template to process, null if the file is unchanged, holds no token or has been restored from the cache
+     */
+    private Template scan(Path path, UsageIndex index, Set<String> referencedTokens, ProcessingMetrics metrics, ResolutionCache cache) {
+        // a resource left as it was once fully resolved has nothing to replace, those with unresolved tokens are retried
+        BasicFileAttributes attributes = readAttributes(path);
+        UsageIndex.FileEntry entry = index.get(path);
+        boolean isUnchanged = entry != null && isUnchanged(path, entry, attributes, metrics);
+        if (isUnchanged && entry.isResolved()) {
+            metrics.filesUnchanged.increment();
+            return null;
+        }
+
+        // tokens already replaced in a retried resource are only known from the index
+        List<UsageIndex.Usage> resolvedUsages = isUnchanged
+                                                ? entry.getUsages().stream().filter(UsageIndex.Usage::isResolved).collect(Collectors.toList())
+                                                : Collections.emptyList();
+
+        metrics.filesScanned.increment();
+        long size = path.toFile().length();
+
+        // cheap byte level scan, files without token are left untouched
+        metrics.bytesRead.add(size);
+        if (!configuration.getIoManager().contains(path, TOKEN_MARKER)) {
+            if (attributes != null) {
+                index.put(path, new UsageIndex.FileEntry(attributes, null, Collections.emptyList()));
+            }
+            return null;
+        }
+        metrics.filesMatched.increment();
+
+        TokenScanner scanner = new TokenScanner();
+        Set<String> tokens = new HashSet<>();
+        List<UsageIndex.Usage> templateUsages = new ArrayList<>();
+        int[] lineNumber = new int[1];
+        metrics.bytesRead.add(size);
+        configuration.getIoManager().forEachLine(path, line -> {
+            lineNumber[0]++;
+            scanner.process(line, token -> {
+                tokens.add(token);
+                templateUsages.add(new UsageIndex.Usage(token, path, lineNumber[0], true));
+                return null;
+            }, token -> {});
+        });
+
+        // restore the processed output of an already seen template
+        byte[] templateDigest = null;
+        if (cache != null) {
+            long writeStart = System.nanoTime();
+            templateDigest = configuration.getIoManager().digest(Collections.singletonList(path));
+            metrics.bytesRead.add(size);
+            MessageDigest outputDigest = configuration.getIoManager().createDigest();
+            if (cache.restore(templateDigest, path, outputDigest)) {
+                // cached templates have been fully resolved
+                List<UsageIndex.Usage> usages = new ArrayList<>(resolvedUsages);
+                usages.addAll(templateUsages);
+                index(path, index, usages, outputDigest.digest());
+                ProcessingMetrics.stop(metrics.writeTime, writeStart);
+                metrics.resolutionCacheHits.increment();
+                metrics.filesRewritten.increment();
+                metrics.bytesWritten.add(path.toFile().length());
+                return null;
+            }
+        }
+
+        referencedTokens.addAll(tokens);
+        return new Template(path, templateDigest, tokens, resolvedUsages);
+    }
+
+    private void process(Template template, Map<String, String> secrets, UsageIndex index, ProcessingMetrics metrics, ResolutionCache cache) {
+        Path path = template.path;
+        TokenScanner scanner = new TokenScanner();
+        List<UsageIndex.Usage> usages = new ArrayList<>(template.resolvedUsages);
+        int[] lineNumber = new int[1];
+
+        // templates with missing secrets are not cached, so that they keep being reported
+        boolean isResolved = secrets.keySet().containsAll(template.tokens);
+        MessageDigest digest = configuration.getIoManager().createDigest();
+
+        // stream file through the scanner, substitution time being excluded from the write time
+        long writeStart = System.nanoTime();
+        long[] substituteTime = new long[1];
+        metrics.bytesRead.add(path.toFile().length());
+        UnaryOperator<String> transformation = line -> {
+            long substituteStart = System.nanoTime();
+            lineNumber[0]++;
+            String processed = scanner.process(line, identifier -> {
+                String secret = resolve(secrets, identifier, metrics);
+                usages.add(new UsageIndex.Usage(identifier, path, lineNumber[0], secret != null));
+                return secret;
+            }, token -> onMissingSecret(token, metrics));
+            substituteTime[0] += System.nanoTime() - substituteStart;
+            return processed;
+        };
+        boolean[] isRewritten = new boolean[1];
+        if (cache != null && isResolved) {
+            // the processed content is encrypted to the cache entry on the fly
+            cache.put(template.digest, output -> isRewritten[0] = configuration.getIoManager().transformFile(path, digest, output, transformation));
+        } else {
+            isRewritten[0] = configuration.getIoManager().transformFile(path, digest, null, transformation);
+        }
+        metrics.substituteTime.add(substituteTime[0]);
+        metrics.writeTime.add(System.nanoTime() - writeStart - substituteTime[0]);
+
+        if (isRewritten[0]) {
+            metrics.filesRewritten.increment();
+            metrics.bytesWritten.add(path.toFile().length());
+        }
+        index(path, index, usages, digest.digest());
+    }
+
+    /**
+     * @param path processed resource
+     * @param index usage index to update
+     * @param usages tokens of the template
+     * @param digest digest of the processed content
+     */
+    private void index(Path path, UsageIndex index, List<UsageIndex.Usage> usages, byte[] digest) {
+        BasicFileAttributes attributes = readAttributes(path);
+        if (attributes != null) {
+            index.put(path, new UsageIndex.FileEntry(attributes, IOManager.toHex(digest), usages));
+        }
+    }
+
+    /**
+     * @param path resource
+     * @param entry indexed state of the resource
+     * @param attributes current attributes of the resource
+     * @param metrics processing metrics
+     *
+     * @return true if the content is the indexed one, its digest being only compared when its modification time changed
+     */
+    private boolean isUnchanged(Path path, UsageIndex.FileEntry entry, BasicFileAttributes attributes, ProcessingMetrics metrics) {
+        if (entry.isUpToDate(attributes)) {
+            return true;
+        } else if (!entry.isComparable(attributes)) {
+            return false;
+        }
+
+        metrics.bytesRead.add(attributes.size());
+        return entry.getDigest().equals(IOManager.toHex(configuration.getIoManager().digest(Collections.singletonList(path))));
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String resolve(Map<String, String> secrets, String identifier, ProcessingMetrics metrics) {
+        String secret = secrets.get(identifier);
+        if (secret != null) {
+            metrics.tokensResolved.increment();
+        }
+
+        return secret;
+    }
+
+    private void onMissingSecret(String token, ProcessingMetrics metrics) {
+        metrics.tokensMissing.increment();
+        LOGGER.error("no value in vault for " + token);
+    }
+
+    /**
+     * Resource holding tokens, with its digest when the resolution cache is enabled
+     */
+    private static final class Template {
+
+        private final Path path;
+        private final byte[] digest;
+        private final Set<String> tokens;
+        // tokens replaced by a previous processing
+        private final List<UsageIndex.Usage> resolvedUsages;
+
+        private Template(Path path, byte[] digest, Set<String> tokens, List<UsageIndex.Usage> resolvedUsages) {
+            this.path = path;
+            this.digest = digest;
+            this.tokens = tokens;
+            this.resolvedUsages = resolvedUsages;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Build scoped holder of vault states, so that a vault is loaded, authenticated and decrypted once per build
+ * whatever the number of tasks and projects using it. States are wiped when the build finishes.
+ */
+public abstract class VaultService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    private final Map<String, VaultState> vaultStates = new ConcurrentHashMap<>();
+
+    /**
+     * @param vaultFile absolute vault file path
+     * @param vaultPassphrase vault passphrase
+     *
+     * @return state shared by all users of the same vault with the same passphrase
+     */
+    VaultState getVaultState(String vaultFile, String vaultPassphrase) {
+        return vaultStates.computeIfAbsent(vaultFile + ":" + digest(vaultPassphrase), key -> new VaultState());
+    }
+
+    private String digest(String vaultPassphrase) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.valueOf(vaultPassphrase).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("unable to digest passphrase", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        vaultStates.values().forEach(VaultState::clear);
+        vaultStates.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable view of the vault content, stamped with the vault and journal file attributes it was loaded from
+ */
+final class VaultSnapshot {
+
+    private final Map<String, String> content;
+    private final FileStamp vaultStamp;
+    private final FileStamp journalStamp;
+
+    VaultSnapshot(Map<String, String> content, BasicFileAttributes vaultAttributes, BasicFileAttributes journalAttributes) {
+        this.content = Collections.unmodifiableMap(content);
+        this.vaultStamp = new FileStamp(vaultAttributes);
+        this.journalStamp = new FileStamp(journalAttributes);
+    }
+
+    /**
+     * @return encrypted vault entries
+     */
+    Map<String, String> getContent() {
+        return content;
+    }
+
+    /**
+     * check whether the snapshot still reflects the vault files
+     *
+     * @param vaultAttributes current vault file attributes, null if the file does not exist
+     * @param journalAttributes current journal file attributes, null if the file does not exist
+     *
+     * @return true if mtime and size of both files are unchanged
+     */
+    boolean isUpToDate(BasicFileAttributes vaultAttributes, BasicFileAttributes journalAttributes) {
+        return vaultStamp.isUpToDate(vaultAttributes) && journalStamp.isUpToDate(journalAttributes);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loaded, authenticated and resolved vault, possibly shared by several vault managers (guarded by its own monitor)
+ */
+final class VaultState {
+
+    VaultSnapshot snapshot;
+    FileStamp authorizedStamp;
+    SecretIndex secretIndex;
+    // derived keys, rebuilt only if the vault key derivation parameters change
+    VaultCipher cipher;
+    // legacy cipher of the vault passphrase, holding its derived key once used
+    EncryptionManager legacyCipher;
+    // loaded vault the key derivation parameters were resolved for, null parameters standing for the legacy cipher
+    VaultSnapshot cipherSnapshot;
+    String cipherParameters;
+    // secrets fetched from remote backends, by URL and token digest
+    final Map<String, HttpSecretBackend.CachedSecret> remoteSecrets = new HashMap<>();
+
+    /**
+     * drop the plaintext index
+     */
+    synchronized void wipe() {
+        if (secretIndex != null) {
+            secretIndex.wipe();
+            secretIndex = null;
+        }
+    }
+
+    /**
+     * forget everything loaded from the vault
+     */
+    synchronized void clear() {
+        wipe();
+        snapshot = null;
+        authorizedStamp = null;
+        cipher = null;
+        if (legacyCipher != null) {
+            legacyCipher.wipe();
+            legacyCipher = null;
+        }
+        cipherSnapshot = null;
+        cipherParameters = null;
+        remoteSecrets.values().forEach(HttpSecretBackend.CachedSecret::wipe);
+        remoteSecrets.clear();
+    }
+}
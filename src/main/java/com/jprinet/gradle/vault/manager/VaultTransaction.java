@@ -0,0 +1,60 @@
+package com.jprinet.gradle.vault.manager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Batch of vault mutations applied in memory and persisted once on commit
+ */
+public final class VaultTransaction {
+
+    private final VaultManager vaultManager;
+    private final VaultCipher vaultCipher;
+
+    // mutations in order, a null value standing for a removal
+    private final Map<String, String> changes = new LinkedHashMap<>();
+
+    VaultTransaction(VaultManager vaultManager, VaultCipher vaultCipher) {
+        this.vaultManager = vaultManager;
+        this.vaultCipher = vaultCipher;
+    }
+
+    /**
+     * add or replace a secret
+     *
+     * @param identifier secret identifier
+     * @param value secret value
+     *
+     * @return this transaction
+     */
+    public VaultTransaction addSecret(String identifier, String value) {
+        String encryptedIdentifier = vaultCipher.encryptKey(identifier);
+        changes.remove(encryptedIdentifier);
+        changes.put(encryptedIdentifier, vaultCipher.encryptValue(identifier, value));
+        return this;
+    }
+
+    /**
+     * remove a secret
+     *
+     * @param identifier secret identifier
+     *
+     * @return this transaction
+     */
+    public VaultTransaction removeSecret(String identifier) {
+        String encryptedIdentifier = vaultCipher.encryptKey(identifier);
+        changes.remove(encryptedIdentifier);
+        changes.put(encryptedIdentifier, null);
+        return this;
+    }
+
+    /**
+     * save the vault once with all mutations, nothing is written if no mutation happened
+     */
+    public void commit() {
+        if (!changes.isEmpty()) {
+            vaultManager.commit(changes);
+            changes.clear();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process resources, then keep processing them as they change until the thread is interrupted.
+ * The vault index stays resident between changes: saved templates are processed on their own and a vault update
+ * only reprocesses the resources the usage index lists with unresolved tokens (resolved tokens are gone from processed resources).
+ */
+public class VaultWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultWatcher.class);
+
+    // events of a single save (create, modify, rename) are processed as one change
+    private static final long QUIET_PERIOD_MS = 50;
+
+    private final VaultConfiguration configuration;
+    private final ResourceFilter filter;
+    private final Path vaultFile;
+    private final Path vaultJournalFile;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    // resources as left by the last processing, so that the events of its own writes are ignored
+    private final Map<Path, FileStamp> processedStamps = new HashMap<>();
+    private final LongAdder processedResources = new LongAdder();
+    private UsageIndex index;
+
+    public VaultWatcher(VaultConfiguration configuration) {
+        this.configuration = configuration;
+        this.filter = new ResourceFilter(configuration);
+        this.vaultFile = Paths.get(configuration.vaultFile).toAbsolutePath();
+        this.vaultJournalFile = Paths.get(VaultManager.getVaultJournalFile(configuration.vaultFile)).toAbsolutePath();
+    }
+
+    /**
+     * process all resources then watch them, returning once the thread is interrupted
+     */
+    public void watch() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            register(watchService, vaultFile.getParent());
+            index = UsageIndex.load(configuration);
+            List<Path> allResources = registerTree(watchService, filter.getRoot());
+            index.retain(allResources);
+            process(allResources);
+
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changedPaths = new LinkedHashSet<>();
+                boolean isVaultChanged = false;
+                boolean isOverflow = false;
+
+                do {
+                    Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            isOverflow = true;
+                        } else if (directory != null) {
+                            Path path = directory.resolve((Path) event.context());
+                            if (path.equals(vaultFile) || path.equals(vaultJournalFile)) {
+                                isVaultChanged = true;
+                            } else if (path.startsWith(filter.getRoot())) {
+                                changedPaths.add(path);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        directories.remove(key);
+                    }
+
+                    key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                Set<Path> resources = new LinkedHashSet<>();
+                if (isOverflow) {
+                    // events were lost, walk the whole tree again
+                    resources.addAll(registerTree(watchService, filter.getRoot()));
+                    index.retain(resources);
+                } else {
+                    for (Path path : changedPaths) {
+                        resources.addAll(getChangedResources(watchService, path));
+                    }
+                }
+                if (isVaultChanged) {
+                    resources.addAll(index.getFiles(usage -> !usage.isResolved()));
+                }
+
+                if (!resources.isEmpty()) {
+                    process(new ArrayList<>(resources));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to watch " + filter.getRoot(), e);
+        }
+    }
+
+    private List<Path> getChangedResources(WatchService watchService, Path path) throws IOException {
+        List<Path> resources = new ArrayList<>();
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            // files may have been created before the directory is watched
+            if (filter.isTraversable(path)) {
+                resources.addAll(registerTree(watchService, path));
+            }
+        } else if (Files.isRegularFile(path)) {
+            if (filter.isResource(path) && !isProcessed(path)) {
+                resources.add(path);
+            }
+        } else {
+            processedStamps.remove(path);
+            index.remove(path);
+        }
+
+        return resources;
+    }
+
+    private void process(List<Path> resources) {
+        ProcessingMetrics metrics = new ProcessingMetrics();
+        try {
+            configuration.getVaultProcessor().process(resources, index, metrics);
+            configuration.getVaultProcessor().writeMissingSecrets(index);
+            index.save();
+        } catch (IllegalStateException e) {
+            // keep watching, the next save may fix it
+            LOGGER.error("unable to process resources", e);
+        }
+        for (Path resource : resources) {
+            processedStamps.put(resource, new FileStamp(configuration.getIoManager().getFileAttributes(resource.toString())));
+        }
+        processedResources.add(resources.size());
+
+        metrics.close();
+        LOGGER.info(metrics.getSummary());
+    }
+
+    private boolean isProcessed(Path path) {
+        FileStamp stamp = processedStamps.get(path);
+        return stamp != null && stamp.isUpToDate(configuration.getIoManager().getFileAttributes(path.toString()));
+    }
+
+    /**
+     * @return number of resources processed since watching started
+     */
+    long getProcessedResources() {
+        return processedResources.sum();
+    }
+
+    private List<Path> registerTree(WatchService watchService, Path start) throws IOException {
+        List<Path> resources = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                // as when processing, subtrees which can't hold any resource are neither walked nor watched
+                if (!directory.equals(filter.getRoot()) && !filter.isTraversable(directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                register(watchService, directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if ((attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(file))) && filter.isResource(file)) {
+                    resources.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return resources;
+    }
+
+    private void register(WatchService watchService, Path directory) throws IOException {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                                          StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+}
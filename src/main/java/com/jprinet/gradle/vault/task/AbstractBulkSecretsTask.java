@@ -0,0 +1,53 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.options.Option;
+
+public abstract class AbstractBulkSecretsTask extends AbstractVaultTask {
+
+    private String file;
+    private String include;
+
+    @Internal
+    public String getFile() {
+        return file;
+    }
+
+    @Option(option = "file", description = "Secrets file (.properties, .json or .csv)")
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @Internal
+    public String getInclude() {
+        return include;
+    }
+
+    @Option(option = "include", description = "Regular expression of the secret identifiers to select")
+    public void setInclude(String include) {
+        this.include = include;
+    }
+
+    /**
+     * @param configuration vault configuration
+     *
+     * @return absolute path of the secrets file, null if not set
+     */
+    protected String resolveFile(VaultConfiguration configuration) {
+        return file != null ? configuration.resolve(file) : null;
+    }
+
+    /**
+     * @param configuration vault configuration
+     *
+     * @return absolute path of the secrets file
+     */
+    protected String requireFile(VaultConfiguration configuration) {
+        if (file == null) {
+            throw new IllegalStateException("missing secrets file, use --file=<path>");
+        }
+
+        return resolveFile(configuration);
+    }
+}
@@ -1,36 +1,227 @@
 package com.jprinet.gradle.vault.task;
 
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
 import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.manager.VaultService;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
+import java.io.File;
 
 public abstract class AbstractVaultTask extends DefaultTask {
 
     private static final String PLUGIN_GROUP = "vault";
 
+    // captured at configuration time, the project must not be accessed at execution time
+    private final File projectDirectory;
+
+    private final Property<String> vaultFile;
+    private final Property<String> vaultPassphraseFile;
+    private final Property<String> resourcePath;
+    private final Property<String> resourcePattern;
+    private final ListProperty<String> resourceIncludes;
+    private final ListProperty<String> resourceExcludes;
+    private final Property<Integer> parallelism;
+    private final Property<String> vaultFormat;
+    private final Property<String> vaultEncryption;
+    private final Property<Boolean> vaultJournal;
+    private final Property<Boolean> resolutionCache;
+    private final Property<String> secretBackend;
+    private final Property<String> secretBackendUrl;
+    private final Property<String> secretBackendTokenFile;
+    private final Property<Integer> secretBackendTtl;
+    private final Property<VaultService> vaultService;
+
+    protected AbstractVaultTask() {
+        projectDirectory = getProject().getProjectDir();
+        vaultFile = getProject().getObjects().property(String.class);
+        vaultPassphraseFile = getProject().getObjects().property(String.class);
+        resourcePath = getProject().getObjects().property(String.class);
+        resourcePattern = getProject().getObjects().property(String.class);
+        resourceIncludes = getProject().getObjects().listProperty(String.class);
+        resourceExcludes = getProject().getObjects().listProperty(String.class);
+        parallelism = getProject().getObjects().property(Integer.class);
+        vaultFormat = getProject().getObjects().property(String.class);
+        vaultEncryption = getProject().getObjects().property(String.class);
+        vaultJournal = getProject().getObjects().property(Boolean.class);
+        resolutionCache = getProject().getObjects().property(Boolean.class);
+        secretBackend = getProject().getObjects().property(String.class);
+        secretBackendUrl = getProject().getObjects().property(String.class);
+        secretBackendTokenFile = getProject().getObjects().property(String.class);
+        secretBackendTtl = getProject().getObjects().property(Integer.class);
+        vaultService = getProject().getObjects().property(VaultService.class);
+    }
+
     @Override
     public String getGroup() {
         return PLUGIN_GROUP;
     }
 
+    /**
+     * wire task properties to the plugin configuration
+     *
+     * @param extension plugin configuration
+     * @param service build service sharing loaded vaults
+     */
+    public void configure(VaultConfigurationExtension extension, Provider<VaultService> service) {
+        vaultFile.set(extension.getVaultFile());
+        vaultPassphraseFile.set(extension.getVaultPassphraseFile());
+        resourcePath.set(extension.getResourcePath());
+        resourcePattern.set(extension.getResourcePattern());
+        resourceIncludes.set(extension.getResourceIncludes());
+        resourceExcludes.set(extension.getResourceExcludes());
+        parallelism.set(extension.getParallelism());
+        vaultFormat.set(extension.getVaultFormat());
+        vaultEncryption.set(extension.getVaultEncryption());
+        vaultJournal.set(extension.getVaultJournal());
+        resolutionCache.set(extension.getResolutionCache());
+        secretBackend.set(extension.getSecretBackend());
+        secretBackendUrl.set(extension.getSecretBackendUrl());
+        secretBackendTokenFile.set(extension.getSecretBackendTokenFile());
+        secretBackendTtl.set(extension.getSecretBackendTtl());
+        vaultService.set(service);
+        usesService(service);
+    }
+
     @TaskAction
     public void taskAction() {
-        VaultConfigurationExtension configuration = getProject().getExtensions().findByType(VaultConfigurationExtension.class);
-        if (null == configuration) {
-            configuration = new VaultConfigurationExtension();
-        }
+        VaultConfiguration configuration = createConfiguration();
         configuration.init(isVaultAccessProtected());
 
-        process(configuration);
+        try {
+            process(configuration);
+        } finally {
+            wipe(configuration);
+        }
+    }
+
+    /**
+     * forget the secrets loaded by the task, unless they are shared within the build through the vault service
+     *
+     * @param configuration execution context
+     */
+    protected void wipe(VaultConfiguration configuration) {
+        if (configuration.getVaultService() == null) {
+            configuration.getVaultManager().wipe();
+        }
+    }
+
+    /**
+     * @return execution context built from the task properties, defaults being applied
+     */
+    protected VaultConfiguration createConfiguration() {
+        VaultConfiguration configuration = new VaultConfiguration(projectDirectory);
+        configuration.vaultFile = vaultFile.getOrNull();
+        configuration.vaultPassphraseFile = vaultPassphraseFile.getOrNull();
+        configuration.resourcePath = resourcePath.getOrNull();
+        configuration.resourcePattern = resourcePattern.getOrNull();
+        configuration.resourceIncludes = resourceIncludes.getOrNull();
+        configuration.resourceExcludes = resourceExcludes.getOrNull();
+        configuration.parallelism = parallelism.getOrNull();
+        configuration.vaultFormat = vaultFormat.getOrNull();
+        configuration.vaultEncryption = vaultEncryption.getOrNull();
+        configuration.vaultJournal = vaultJournal.getOrNull();
+        configuration.resolutionCache = resolutionCache.getOrNull();
+        configuration.secretBackend = secretBackend.getOrNull();
+        configuration.secretBackendUrl = secretBackendUrl.getOrNull();
+        configuration.secretBackendTokenFile = secretBackendTokenFile.getOrNull();
+        configuration.secretBackendTtl = secretBackendTtl.getOrNull();
+        configuration.setVaultService(vaultService.getOrNull());
+        configuration.applyDefaults();
+
+        return configuration;
     }
 
-    protected abstract void process(VaultConfigurationExtension configuration);
+    protected abstract void process(VaultConfiguration configuration);
 
     /**
      * @return whether vault access has to be checked
      */
+    @Internal
     protected boolean isVaultAccessProtected(){
         return true;
     }
 
+    @Internal
+    public Property<String> getVaultFile() {
+        return vaultFile;
+    }
+
+    @Internal
+    public Property<String> getVaultPassphraseFile() {
+        return vaultPassphraseFile;
+    }
+
+    @Internal
+    public Property<String> getResourcePath() {
+        return resourcePath;
+    }
+
+    @Internal
+    public Property<String> getResourcePattern() {
+        return resourcePattern;
+    }
+
+    @Internal
+    public ListProperty<String> getResourceIncludes() {
+        return resourceIncludes;
+    }
+
+    @Internal
+    public ListProperty<String> getResourceExcludes() {
+        return resourceExcludes;
+    }
+
+    @Internal
+    public Property<Integer> getParallelism() {
+        return parallelism;
+    }
+
+    @Internal
+    public Property<String> getVaultFormat() {
+        return vaultFormat;
+    }
+
+    @Internal
+    public Property<String> getVaultEncryption() {
+        return vaultEncryption;
+    }
+
+    @Internal
+    public Property<Boolean> getVaultJournal() {
+        return vaultJournal;
+    }
+
+    @Internal
+    public Property<Boolean> getResolutionCache() {
+        return resolutionCache;
+    }
+
+    @Internal
+    public Property<String> getSecretBackend() {
+        return secretBackend;
+    }
+
+    @Internal
+    public Property<String> getSecretBackendUrl() {
+        return secretBackendUrl;
+    }
+
+    @Internal
+    public Property<String> getSecretBackendTokenFile() {
+        return secretBackendTokenFile;
+    }
+
+    @Internal
+    public Property<Integer> getSecretBackendTtl() {
+        return secretBackendTtl;
+    }
+
+    @Internal
+    public Property<VaultService> getVaultService() {
+        return vaultService;
+    }
 }
@@ -1,6 +1,7 @@
 package com.jprinet.gradle.vault.task;
 
-import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.gradle.api.tasks.Internal;
 
 public class CreateVaultTask extends AbstractVaultTask {
 
@@ -12,13 +13,14 @@ public class CreateVaultTask extends AbstractVaultTask {
     }
 
     @Override
-    protected void process(VaultConfigurationExtension configuration) {
+    protected void process(VaultConfiguration configuration) {
         configuration.getVaultManager().createVault();
     }
 
     /**
      * @return false as access can't be checked if vault does not exist
      */
+    @Internal
     @Override
     protected boolean isVaultAccessProtected() {
         return false;
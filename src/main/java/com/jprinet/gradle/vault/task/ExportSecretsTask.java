@@ -0,0 +1,18 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+
+public class ExportSecretsTask extends AbstractBulkSecretsTask {
+
+    private static final String TASK_DESCRIPTION = "Export secrets from vault to a file";
+
+    @Override
+    public String getDescription() {
+        return TASK_DESCRIPTION;
+    }
+
+    @Override
+    protected void process(VaultConfiguration configuration) {
+        configuration.getVaultManager().exportSecrets(requireFile(configuration), getInclude());
+    }
+}
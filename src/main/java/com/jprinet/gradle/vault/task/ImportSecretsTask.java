@@ -0,0 +1,18 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+
+public class ImportSecretsTask extends AbstractBulkSecretsTask {
+
+    private static final String TASK_DESCRIPTION = "Import secrets from a file into vault";
+
+    @Override
+    public String getDescription() {
+        return TASK_DESCRIPTION;
+    }
+
+    @Override
+    protected void process(VaultConfiguration configuration) {
+        configuration.getVaultManager().importSecrets(requireFile(configuration), getInclude());
+    }
+}
@@ -1,18 +1,178 @@
 package com.jprinet.gradle.vault.task;
 
-import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import com.jprinet.gradle.vault.manager.ResourceFilter;
+import com.jprinet.gradle.vault.manager.VaultManager;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.OutputFiles;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
 
+/**
+ * Resources are processed in place, they are declared as outputs so that the task is up-to-date
+ * until they get overwritten (by processResources for instance) or the vault changes.
+ */
 public class ProcessSecretsTask extends AbstractVaultTask {
 
     private static final String TASK_DESCRIPTION = "Replace secrets in resources";
+    private static final String REPORT_FILE = "reports/vault/processSecrets.json";
+
+    private final FileCollection resources;
+    private final FileCollection vaultJournal;
+    private final Provider<RegularFile> reportFile;
+
+    private ResourceFilter resourceFilter;
+
+    public ProcessSecretsTask() {
+        // lazily evaluated, the file tree is only walked when outputs are snapshotted, pruning directories as the processing does
+        ConfigurableFileTree resourceTree = getProject().fileTree((Callable<File>) () -> new File(createConfiguration().resourcePath));
+        resourceTree.include(this::isResource);
+        resources = resourceTree;
+        vaultJournal = getProject().files((Callable<File>) () -> new File(VaultManager.getVaultJournalFile(createConfiguration().vaultFile)));
+        reportFile = getProject().getLayout().getBuildDirectory().file(REPORT_FILE);
+
+        // remote secrets may change without Gradle noticing
+        getOutputs().upToDateWhen(task -> isLocalSecretBackend());
+    }
 
     @Override
     public String getDescription() {
         return TASK_DESCRIPTION;
     }
 
+    /**
+     * @return vault file, null when secrets are read from a remote backend
+     */
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getVault() {
+        return isLocalSecretBackend() ? new File(createConfiguration().vaultFile) : null;
+    }
+
+    /**
+     * @return pending vault mutations, if any
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public FileCollection getVaultJournalFile() {
+        return vaultJournal;
+    }
+
+    @Input
+    @Override
+    public Property<String> getResourcePath() {
+        return super.getResourcePath();
+    }
+
+    @Input
+    @Override
+    public Property<String> getResourcePattern() {
+        return super.getResourcePattern();
+    }
+
+    @Input
+    @Override
+    public ListProperty<String> getResourceIncludes() {
+        return super.getResourceIncludes();
+    }
+
+    @Input
+    @Override
+    public ListProperty<String> getResourceExcludes() {
+        return super.getResourceExcludes();
+    }
+
+    @Input
+    @Override
+    public Property<String> getSecretBackend() {
+        return super.getSecretBackend();
+    }
+
+    @Optional
+    @Input
+    @Override
+    public Property<String> getSecretBackendUrl() {
+        return super.getSecretBackendUrl();
+    }
+
+    /**
+     * @return passphrase fingerprint, null when secrets are read from a remote backend
+     */
+    @Optional
+    @Input
+    public String getVaultPassphraseFingerprint() {
+        if (!isLocalSecretBackend()) {
+            return null;
+        }
+
+        VaultConfiguration configuration = createConfiguration();
+        configuration.init(false);
+        try {
+            return configuration.getVaultManager().getVaultPassphraseFingerprint();
+        } finally {
+            wipe(configuration);
+        }
+    }
+
+    @OutputFiles
+    public FileCollection getResources() {
+        return resources;
+    }
+
+    /**
+     * @return processing metrics (files, tokens, bytes, timings)
+     */
+    @OutputFile
+    public Provider<RegularFile> getReportFile() {
+        return reportFile;
+    }
+
+    private boolean isResource(FileTreeElement element) {
+        // properties can't change once the task graph is ready, compile the patterns once
+        if (resourceFilter == null) {
+            resourceFilter = new ResourceFilter(createConfiguration());
+        }
+
+        Path path = element.getFile().toPath();
+        return element.isDirectory() ? resourceFilter.isTraversable(path) : resourceFilter.isResource(path);
+    }
+
+    private boolean isLocalSecretBackend() {
+        return VaultManager.isLocalSecretBackend(getSecretBackend().getOrNull());
+    }
+
+    @Internal
+    @Override
+    protected boolean isVaultAccessProtected() {
+        // a remote backend has its own access control
+        return isLocalSecretBackend();
+    }
+
+    @Override
+    protected VaultConfiguration createConfiguration() {
+        VaultConfiguration configuration = super.createConfiguration();
+        configuration.reportFile = reportFile.get().getAsFile().getPath();
+        return configuration;
+    }
+
     @Override
-    protected void process(VaultConfigurationExtension configuration) {
+    protected void process(VaultConfiguration configuration) {
         configuration.getVaultProcessor().process();
     }
 }
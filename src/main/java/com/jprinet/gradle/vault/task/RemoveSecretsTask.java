@@ -0,0 +1,18 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+
+public class RemoveSecretsTask extends AbstractBulkSecretsTask {
+
+    private static final String TASK_DESCRIPTION = "Remove secrets listed in a file or matching a pattern from vault";
+
+    @Override
+    public String getDescription() {
+        return TASK_DESCRIPTION;
+    }
+
+    @Override
+    protected void process(VaultConfiguration configuration) {
+        configuration.getVaultManager().removeSecrets(resolveFile(configuration), getInclude());
+    }
+}
@@ -1,6 +1,6 @@
 package com.jprinet.gradle.vault.task;
 
-import com.jprinet.gradle.vault.configuration.VaultConfigurationExtension;
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
 
 public class RevealSecretTask extends AbstractVaultTask {
 
@@ -12,7 +12,7 @@ public class RevealSecretTask extends AbstractVaultTask {
     }
 
     @Override
-    protected void process(VaultConfigurationExtension configuration) {
+    protected void process(VaultConfiguration configuration) {
         configuration.getVaultManager().revealSecret();
     }
 }
@@ -0,0 +1,42 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.options.Option;
+
+/**
+ * Report the resources referencing each secret, read from the usage index of the last processing
+ */
+public class VaultUsageTask extends AbstractVaultTask {
+
+    private static final String TASK_DESCRIPTION = "List the resources referencing each secret";
+
+    private String include;
+
+    @Override
+    public String getDescription() {
+        return TASK_DESCRIPTION;
+    }
+
+    @Internal
+    public String getInclude() {
+        return include;
+    }
+
+    @Option(option = "include", description = "Regular expression of the secret identifiers to report")
+    public void setInclude(String include) {
+        this.include = include;
+    }
+
+    @Override
+    protected void process(VaultConfiguration configuration) {
+        configuration.getVaultProcessor().printUsages(include);
+    }
+
+    @Internal
+    @Override
+    protected boolean isVaultAccessProtected() {
+        // only token locations are read, the vault is left untouched
+        return false;
+    }
+}
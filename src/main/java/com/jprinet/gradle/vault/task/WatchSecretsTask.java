@@ -0,0 +1,23 @@
+package com.jprinet.gradle.vault.task;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import com.jprinet.gradle.vault.manager.VaultWatcher;
+
+/**
+ * Long running task, resources are processed again on each template save or vault update until the build is cancelled
+ */
+public class WatchSecretsTask extends AbstractVaultTask {
+
+    private static final String TASK_DESCRIPTION = "Replace secrets in resources and keep replacing them as they change";
+
+    @Override
+    public String getDescription() {
+        return TASK_DESCRIPTION;
+    }
+
+    @Override
+    protected void process(VaultConfiguration configuration) {
+        getLogger().lifecycle("Watching " + configuration.resourcePath + " and " + configuration.vaultFile + ", press ctrl-c to stop");
+        new VaultWatcher(configuration).watch();
+    }
+}
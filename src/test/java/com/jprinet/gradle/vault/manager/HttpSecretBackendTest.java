@@ -0,0 +1,136 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpSecretBackendTest {
+
+    private static final String TOKEN = "s.token";
+    private static final String KV_V2_PATH = "/v1/secret/data/app";
+    private static final String KV_V1_PATH = "/v1/kv/app";
+    private static final String KV_V2_BODY = "{\"data\": {\"data\": {\"db.password\": \"p@ss\", \"port\": 5432, \"ratio\": 1.50},"
+                                             + " \"metadata\": {\"version\": 3}}}";
+    private static final String KV_V1_BODY = "{\"lease_duration\": 2764800, \"data\": {\"db.password\": \"v1-pass\"}}";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> tokens = new CopyOnWriteArrayList<>();
+    private VaultState vaultState;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(KV_V2_PATH, exchange -> respond(exchange, 200, KV_V2_BODY));
+        server.createContext(KV_V1_PATH, exchange -> respond(exchange, 200, KV_V1_BODY));
+        server.createContext("/v1/secret/data/missing", exchange -> respond(exchange, 404, "{\"errors\": []}"));
+        server.createContext("/v1/secret/data/denied", exchange -> respond(exchange, 403, "{\"errors\": [\"permission denied\"]}"));
+        server.start();
+        vaultState = new VaultState();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        requests.incrementAndGet();
+        tokens.add(exchange.getRequestHeaders().getFirst("X-Vault-Token"));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private HttpSecretBackend createBackend(String path, int ttlSeconds) {
+        return new HttpSecretBackend("http://127.0.0.1:" + server.getAddress().getPort() + path, TOKEN, ttlSeconds, vaultState);
+    }
+
+    @Test
+    public void fetchKvV2Secret() {
+        Map<String, String> secrets = createBackend(KV_V2_PATH, 300).fetch(Arrays.asList("vault.db.password", "vault.port", "vault.ratio", "vault.unknown"), null);
+
+        assertEquals(3, secrets.size());
+        assertEquals("p@ss", secrets.get("vault.db.password"));
+        // numbers are kept as written, not as doubles
+        assertEquals("5432", secrets.get("vault.port"));
+        assertEquals("1.50", secrets.get("vault.ratio"));
+        assertEquals(Collections.singletonList(TOKEN), tokens);
+    }
+
+    @Test
+    public void fetchKvV1Secret() {
+        Map<String, String> secrets = createBackend(KV_V1_PATH, 300).fetch(Collections.singleton("vault.db.password"), null);
+
+        assertEquals(Collections.singletonMap("vault.db.password", "v1-pass"), secrets);
+        assertEquals(TOKEN, tokens.get(0));
+    }
+
+    @Test
+    public void fetchOncePerBuildWithinTtl() {
+        ProcessingMetrics metrics = new ProcessingMetrics();
+        for (int i = 0; i < 3; i++) {
+            // a backend per task, sharing the build state
+            createBackend(KV_V2_PATH, 300).fetch(Collections.singleton("vault.port"), metrics);
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(2, metrics.cacheHits.sum());
+    }
+
+    @Test
+    public void fetchOncePerToken() {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + KV_V2_PATH;
+        createBackend(KV_V2_PATH, 300).fetch(Collections.singleton("vault.port"), null);
+        new HttpSecretBackend(url, "s.other", 300, vaultState).fetch(Collections.singleton("vault.port"), null);
+        new HttpSecretBackend(url, "s.other", 300, vaultState).fetch(Collections.singleton("vault.port"), null);
+
+        // a token does not read the secret fetched with another one
+        assertEquals(Arrays.asList(TOKEN, "s.other"), tokens);
+    }
+
+    @Test
+    public void fetchAgainAfterTtl() throws InterruptedException {
+        HttpSecretBackend backend = createBackend(KV_V2_PATH, 1);
+        backend.fetch(Collections.singleton("vault.port"), null);
+        backend.fetch(Collections.singleton("vault.port"), null);
+        assertEquals(1, requests.get());
+
+        Thread.sleep(1100);
+        backend.fetch(Collections.singleton("vault.port"), null);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void missingSecretIsEmpty() {
+        Map<String, String> secrets = createBackend("/v1/secret/data/missing", 300).fetch(Collections.singleton("vault.port"), null);
+
+        assertTrue(secrets.isEmpty());
+    }
+
+    @Test
+    public void deniedAccessFails() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> createBackend("/v1/secret/data/denied", 300).fetch(Collections.singleton("vault.port"), null));
+
+        assertTrue(e.getMessage().contains("403"));
+    }
+}
@@ -0,0 +1,174 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IOManagerTest {
+
+    private static final byte[] MARKER = "@@vault".getBytes(StandardCharsets.UTF_8);
+    // size of the chunks files are scanned by
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final IOManager ioManager = new IOManager();
+
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-test");
+        file = directory.resolve("app.properties");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void findMarkerAcrossBufferBoundary() throws IOException {
+        for (int offset = SCAN_BUFFER_SIZE - MARKER.length; offset <= SCAN_BUFFER_SIZE; offset++) {
+            write(offset, "@@vault.a@@");
+            assertTrue(ioManager.contains(file, MARKER), "marker at " + offset);
+        }
+    }
+
+    @Test
+    public void findMarkerAfterOverlappingPrefix() throws IOException {
+        for (int offset = SCAN_BUFFER_SIZE - MARKER.length - 1; offset <= SCAN_BUFFER_SIZE; offset++) {
+            write(offset, "@@@vault.a@@");
+            assertTrue(ioManager.contains(file, MARKER), "marker at " + offset);
+        }
+        write(0, "@@v@@vault");
+        assertTrue(ioManager.contains(file, MARKER));
+    }
+
+    @Test
+    public void ignorePartialMarkers() throws IOException {
+        write(SCAN_BUFFER_SIZE - 3, "@@vau");
+        assertFalse(ioManager.contains(file, MARKER));
+
+        write(SCAN_BUFFER_SIZE - 3, "@@vau@@vaul @vault");
+        assertFalse(ioManager.contains(file, MARKER));
+
+        write(0, "");
+        assertFalse(ioManager.contains(file, MARKER));
+    }
+
+    @Test
+    public void keepLineBreaks() throws IOException {
+        Files.write(file, bytes("a=@@vault.a@@\r\nb=1\n\r\nc=@@vault.a@@"));
+
+        assertTrue(ioManager.transformFile(file, this::resolve));
+
+        assertArrayEquals(bytes("a=A\r\nb=1\n\r\nc=A"), Files.readAllBytes(file));
+    }
+
+    @Test
+    public void transformLinesLongerThanReadBuffer() throws IOException {
+        char[] padding = new char[20_000];
+        Arrays.fill(padding, 'x');
+        String prefix = new String(padding);
+        Files.write(file, bytes(prefix + "@@vault.a@@\n" + prefix));
+
+        assertTrue(ioManager.transformFile(file, this::resolve));
+
+        assertArrayEquals(bytes(prefix + "A\n" + prefix), Files.readAllBytes(file));
+    }
+
+    @Test
+    public void keepBytesOutsideTokens() throws IOException {
+        // ISO-8859-1 line, invalid UTF-8 line and UTF-8 line
+        byte[] content = concat(new byte[]{'k', '=', (byte) 0xe9, ' '}, bytes("@@vault.e@@\n"),
+                                new byte[]{(byte) 0xff, (byte) 0xfe, '\n'},
+                                bytes("k=\u00e9 @@vault.e@@\n"));
+        Files.write(file, content);
+
+        assertTrue(ioManager.transformFile(file, this::resolve));
+
+        byte[] expected = concat(new byte[]{'k', '=', (byte) 0xe9, ' ', (byte) 0xe9, '\n'},
+                                 new byte[]{(byte) 0xff, (byte) 0xfe, '\n'},
+                                 bytes("k=\u00e9 \u00e9\n"));
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void leaveUnchangedFileInPlace() throws IOException {
+        byte[] content = bytes("a=1\r\n@@vault.missing@@");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+        assertFalse(ioManager.transformFile(file, this::resolve));
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void observeTransformedContent() throws IOException {
+        Files.write(file, bytes("a=@@vault.a@@\r\nb"));
+        MessageDigest digest = ioManager.createDigest();
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        assertTrue(ioManager.transformFile(file, digest, copy, this::resolve));
+
+        byte[] content = Files.readAllBytes(file);
+        assertArrayEquals(content, copy.toByteArray());
+        assertArrayEquals(ioManager.createDigest().digest(content), digest.digest());
+    }
+
+    @Test
+    public void readLinesAsTransformed() throws IOException {
+        Files.write(file, bytes("a\r\nb\n\nc"));
+        List<String> lines = new ArrayList<>();
+
+        ioManager.forEachLine(file, lines::add);
+
+        assertEquals(Arrays.asList("a", "b", "", "c"), lines);
+    }
+
+    private String resolve(String line) {
+        return new TokenScanner().process(line, token -> token.equals("vault.a") ? "A" : token.equals("vault.e") ? "\u00e9" : null, token -> { });
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void write(int offset, String content) throws IOException {
+        byte[] padding = new byte[offset];
+        Arrays.fill(padding, (byte) 'x');
+        byte[] suffix = content.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = Arrays.copyOf(padding, offset + suffix.length);
+        System.arraycopy(suffix, 0, bytes, offset, suffix.length);
+        Files.write(file, bytes);
+    }
+}
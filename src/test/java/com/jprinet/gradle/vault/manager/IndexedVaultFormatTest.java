@@ -0,0 +1,76 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IndexedVaultFormatTest {
+
+    private final IndexedVaultFormat format = new IndexedVaultFormat(new IOManager());
+
+    private Path directory;
+    private String vaultFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-test");
+        vaultFile = directory.resolve(".vault").toString();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void readWrittenEntries() {
+        Map<String, String> content = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            content.put("key" + i, "value" + i);
+        }
+        content.put("unicode", "café ✓");
+
+        format.write(vaultFile, content);
+
+        assertTrue(format.isFormatOf(vaultFile));
+        assertEquals(content, format.read(vaultFile));
+        content.forEach((key, value) -> assertEquals(value, format.read(vaultFile, key)));
+        assertNull(format.read(vaultFile, "missing"));
+    }
+
+    @Test
+    public void readCollidingEntries() {
+        // same String hash code, thus same initial slot
+        Map<String, String> content = new HashMap<>();
+        content.put("AaAa", "1");
+        content.put("BBBB", "2");
+        content.put("AaBB", "3");
+
+        format.write(vaultFile, content);
+
+        assertEquals(content, format.read(vaultFile));
+        assertEquals("1", format.read(vaultFile, "AaAa"));
+        assertEquals("2", format.read(vaultFile, "BBBB"));
+        assertEquals("3", format.read(vaultFile, "AaBB"));
+        assertNull(format.read(vaultFile, "BBAa"));
+    }
+
+    @Test
+    public void readEmptyVault() {
+        format.write(vaultFile, Collections.emptyMap());
+
+        assertTrue(format.isFormatOf(vaultFile));
+        assertEquals(Collections.emptyMap(), format.read(vaultFile));
+        assertNull(format.read(vaultFile, "missing"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResolutionCacheTest {
+
+    // size of the chunks entries are encrypted by
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int ENTRY_HEADER_SIZE = 7;
+    private static final int TAG_SIZE = 16;
+    private static final byte[] TEMPLATE_DIGEST = {1, 2, 3};
+
+    private final IOManager ioManager = new IOManager();
+
+    private Path directory;
+    private Path resource;
+    private ResolutionCache cache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-test");
+        resource = directory.resolve("app.properties");
+        cache = new ResolutionCache(ioManager, directory.resolve("cache"), new byte[32], new byte[]{4, 5, 6}, ResolutionCache.MAX_SIZE);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void restoreContentOfAnySize() throws IOException {
+        for (int size : new int[]{0, 1, CHUNK_SIZE, 2 * CHUNK_SIZE + 1}) {
+            byte[] content = content(size);
+            cache.put(TEMPLATE_DIGEST, out -> out.write(content));
+
+            MessageDigest digest = ioManager.createDigest();
+            assertTrue(cache.restore(TEMPLATE_DIGEST, resource, digest), "size " + size);
+
+            assertArrayEquals(content, Files.readAllBytes(resource));
+            assertArrayEquals(ioManager.createDigest().digest(content), digest.digest());
+        }
+    }
+
+    @Test
+    public void dropTruncatedEntry() throws IOException {
+        cache.put(TEMPLATE_DIGEST, out -> out.write(content(2 * CHUNK_SIZE)));
+        Path entry = getEntry();
+        // cut after the first chunk, which is valid on its own
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.WRITE)) {
+            channel.truncate(ENTRY_HEADER_SIZE + CHUNK_SIZE + TAG_SIZE);
+        }
+        byte[] content = content(1);
+        Files.write(resource, content);
+
+        assertFalse(cache.restore(TEMPLATE_DIGEST, resource, ioManager.createDigest()));
+
+        assertArrayEquals(content, Files.readAllBytes(resource));
+        assertFalse(Files.exists(entry));
+    }
+
+    private Path getEntry() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.resolve("cache"), "*.entry")) {
+            return entries.iterator().next();
+        }
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,63 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Vaults created in temporary project directories
+ */
+final class TestVaults {
+
+    static final String PASSPHRASE = "test-passphrase";
+    static final String REPORT_FILE = "build/reports/vault/processSecrets.json";
+
+    private TestVaults() {
+    }
+
+    /**
+     * @return new project directory holding a passphrase file
+     */
+    static Path createDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("vault-test");
+        Files.write(directory.resolve(".vault_passphrase"), PASSPHRASE.getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+
+    /**
+     * @param directory project directory
+     */
+    static void createVault(Path directory) {
+        VaultConfiguration configuration = new VaultConfiguration(directory.toFile());
+        configuration.init(false);
+        configuration.getVaultManager().createVault();
+    }
+
+    /**
+     * @param directory project directory
+     *
+     * @return configuration with the default paths, vault access being checked
+     */
+    static VaultConfiguration createConfiguration(Path directory) {
+        VaultConfiguration configuration = new VaultConfiguration(directory.toFile());
+        configuration.reportFile = REPORT_FILE;
+        configuration.init(true);
+        return configuration;
+    }
+
+    /**
+     * @param directory directory to delete with its content
+     */
+    static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
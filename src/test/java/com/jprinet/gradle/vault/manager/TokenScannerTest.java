@@ -0,0 +1,81 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TokenScannerTest {
+
+    private final TokenScanner scanner = new TokenScanner();
+    private final Map<String, String> secrets = new HashMap<>();
+    private final List<String> missingTokens = new ArrayList<>();
+
+    public TokenScannerTest() {
+        secrets.put("vault.a", "A");
+        secrets.put("vault.b", "B@@");
+    }
+
+    @Test
+    public void replaceTokens() {
+        assertEquals("url=A:B@@/db", process("url=@@vault.a@@:@@vault.b@@/db"));
+        assertEquals(Collections.emptyList(), missingTokens);
+    }
+
+    @Test
+    public void replaceAdjacentTokens() {
+        assertEquals("AB@@", process("@@vault.a@@@@vault.b@@"));
+        assertEquals("@AA@", process("@@@vault.a@@@@vault.a@@@"));
+    }
+
+    @Test
+    public void keepLineWithoutToken() {
+        String line = "user@@host @@ x";
+
+        assertSame(line, process(line));
+        assertSame("", process(""));
+    }
+
+    @Test
+    public void keepUnterminatedToken() {
+        String line = "a=@@vault.a";
+
+        assertSame(line, process(line));
+        assertEquals("A @@vault.", process("@@vault.a@@ @@vault."));
+        assertEquals(Collections.emptyList(), missingTokens);
+    }
+
+    @Test
+    public void reportMissingTokens() {
+        String line = "@@vault.c@@=@@vault.d@@";
+
+        assertSame(line, process(line));
+        assertEquals(Arrays.asList("vault.c", "vault.d"), missingTokens);
+    }
+
+    @Test
+    public void replaceTokenAfterOtherSeparators() {
+        assertEquals("@A", process("@@@vault.a@@"));
+        // the closing separator of a non vault pair opens the next token
+        assertEquals("@@userA", process("@@user@@vault.a@@"));
+        assertEquals("mail@@A", process("mail@@@@vault.a@@"));
+    }
+
+    @Test
+    public void keepValuesAsIs() {
+        // values are not scanned again, nor treated as replacement patterns
+        secrets.put("vault.c", "@@vault.a@@ $1 \\");
+
+        assertEquals("@@vault.a@@ $1 \\", process("@@vault.c@@"));
+    }
+
+    private String process(String line) {
+        return scanner.process(line, secrets::get, missingTokens::add);
+    }
+}
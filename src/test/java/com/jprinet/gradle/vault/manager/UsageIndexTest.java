@@ -0,0 +1,129 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UsageIndexTest {
+
+    private static final String KEY_A = "vault.key.a";
+    private static final String KEY_B = "vault.key.b";
+
+    private Path directory;
+    private Path templateA;
+    private Path templateB;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = TestVaults.createDirectory();
+        Path conf = Files.createDirectories(directory.resolve("build/app/conf"));
+        templateA = conf.resolve("a.properties");
+        templateB = conf.resolve("b.properties");
+        Files.write(templateA, Collections.singletonList("a=@@" + KEY_A + "@@"));
+        Files.write(templateB, Collections.singletonList("b=@@" + KEY_B + "@@"));
+
+        TestVaults.createVault(directory);
+        // both tokens left unresolved
+        TestVaults.createConfiguration(directory).getVaultProcessor().process();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void indexTokenLocations() {
+        Map<String, List<UsageIndex.Usage>> usages = loadIndex().getUsages(usage -> true);
+
+        assertEquals(2, usages.size());
+        UsageIndex.Usage usage = usages.get(KEY_A).get(0);
+        assertEquals(templateA, usage.getFile());
+        assertEquals(1, usage.getLine());
+        assertFalse(usage.isResolved());
+    }
+
+    @Test
+    public void reprocessOnlyResourcesReferencingUpdatedSecret() throws IOException {
+        FileTime modifiedB = Files.getLastModifiedTime(templateB);
+        String digestB = loadIndex().get(templateB).getDigest();
+
+        TestVaults.createConfiguration(directory).getVaultManager().addSecret(KEY_A, "A");
+
+        assertEquals(Collections.singletonList("a=A"), Files.readAllLines(templateA));
+        assertTrue(loadIndex().get(templateA).isResolved());
+
+        assertEquals(Collections.singletonList("b=@@" + KEY_B + "@@"), Files.readAllLines(templateB));
+        assertEquals(modifiedB, Files.getLastModifiedTime(templateB));
+        assertEquals(digestB, loadIndex().get(templateB).getDigest());
+    }
+
+    @Test
+    public void skipUnchangedResolvedResources() throws IOException {
+        TestVaults.createConfiguration(directory).getVaultManager().addSecret(KEY_A, "A");
+        FileTime modifiedA = Files.getLastModifiedTime(templateA);
+
+        // same content, another modification time: the digest tells it is unchanged
+        Files.setLastModifiedTime(templateA, FileTime.fromMillis(modifiedA.toMillis() + 10000));
+        TestVaults.createConfiguration(directory).getVaultProcessor().process();
+
+        String report = new String(Files.readAllBytes(directory.resolve(TestVaults.REPORT_FILE)), StandardCharsets.UTF_8);
+        assertTrue(report.contains("\"filesUnchanged\": 1"), report);
+    }
+
+    @Test
+    public void dropDeletedResources() throws IOException {
+        Files.delete(templateB);
+        TestVaults.createConfiguration(directory).getVaultProcessor().process();
+
+        UsageIndex index = loadIndex();
+        assertNull(index.get(templateB));
+        assertFalse(index.getUsages(usage -> true).containsKey(KEY_B));
+        assertNotNull(index.get(templateA));
+    }
+
+    @Test
+    public void reindexRenamedResources() throws IOException {
+        Path renamedB = templateB.resolveSibling("renamed.properties");
+        Files.move(templateB, renamedB);
+        TestVaults.createConfiguration(directory).getVaultProcessor().process();
+
+        UsageIndex index = loadIndex();
+        assertNull(index.get(templateB));
+        List<UsageIndex.Usage> usages = index.getUsages(usage -> true).get(KEY_B);
+        assertEquals(1, usages.size());
+        assertEquals(renamedB, usages.get(0).getFile());
+
+        // the renamed resource is the one reprocessed once its secret is set
+        TestVaults.createConfiguration(directory).getVaultManager().addSecret(KEY_B, "B");
+        assertEquals(Collections.singletonList("b=B"), Files.readAllLines(renamedB));
+    }
+
+    @Test
+    public void listTokenLocationsInMissingSecrets() throws IOException {
+        List<String> missingSecrets = Files.readAllLines(directory.resolve(".vault_missing_secrets"));
+
+        assertEquals(4, missingSecrets.size());
+        assertEquals("# build/app/conf/a.properties:1", missingSecrets.get(0).replace('\\', '/'));
+        assertEquals(KEY_A + ";fill_me", missingSecrets.get(1));
+    }
+
+    private UsageIndex loadIndex() {
+        return UsageIndex.load(TestVaults.createConfiguration(directory));
+    }
+}
@@ -0,0 +1,117 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class VaultJournalTest {
+
+    private Path directory;
+    private Path journalFile;
+    private VaultJournal journal;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-test");
+        String vaultFile = directory.resolve(".vault").toString();
+        journalFile = Paths.get(VaultJournal.getJournalFile(vaultFile));
+        journal = new VaultJournal(new IOManager(), vaultFile);
+
+        journal.append(Collections.singletonMap("a", "1"));
+        journal.append(Collections.singletonMap("b", "2"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void replayRecordsInOrder() {
+        Map<String, String> changes = new LinkedHashMap<>();
+        changes.put("a", null);
+        changes.put("c", "3");
+        journal.append(changes);
+
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("a", "0");
+        content.put("d", "4");
+        journal.replay(content);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("d", "4");
+        expected.put("b", "2");
+        expected.put("c", "3");
+        assertEquals(expected, content);
+    }
+
+    @Test
+    public void dropTruncatedLastBatch() throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        assertEquals(Collections.singletonMap("a", "1"), journal.read());
+
+        // the torn batch does not swallow the next one
+        journal.append(Collections.singletonMap("c", "3"));
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("a", "1");
+        expected.put("c", "3");
+        assertEquals(expected, journal.read());
+    }
+
+    @Test
+    public void dropPartiallyWrittenBatch() throws IOException {
+        long committedSize = Files.size(journalFile);
+        Map<String, String> changes = new LinkedHashMap<>();
+        changes.put("a", null);
+        changes.put("c", "3");
+        changes.put("d", "4");
+        journal.append(changes);
+
+        // crash once the first records of the batch are written
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.truncate(committedSize + "-a\n+c---3\n".length());
+        }
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+        assertEquals(expected, journal.read());
+
+        journal.append(Collections.singletonMap("e", "5"));
+        expected.put("e", "5");
+        assertEquals(expected, journal.read());
+    }
+
+    @Test
+    public void stopAtCorruptedBatch() throws IOException {
+        journal.append(Collections.singletonMap("c", "3"));
+        String records = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+        Files.write(journalFile, records.replace("+b---2", "+b---9").getBytes(StandardCharsets.UTF_8));
+
+        // later batches may depend on the lost one
+        assertEquals(Collections.singletonMap("a", "1"), journal.read());
+    }
+
+    @Test
+    public void dropCorruptedLastBatch() throws IOException {
+        String records = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+        Files.write(journalFile, records.replace("+b---2", "+b---9").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Collections.singletonMap("a", "1"), journal.read());
+    }
+}
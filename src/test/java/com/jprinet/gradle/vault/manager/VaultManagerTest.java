@@ -0,0 +1,120 @@
+package com.jprinet.gradle.vault.manager;
+
+import com.jprinet.gradle.vault.configuration.VaultConfiguration;
+import org.gradle.api.services.BuildServiceParameters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class VaultManagerTest {
+
+    private static final String KEY = "vault.key";
+
+    private Path directory;
+    private VaultService vaultService;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = TestVaults.createDirectory();
+        TestVaults.createVault(directory);
+        vaultService = new VaultService() {
+            @Override
+            public BuildServiceParameters.None getParameters() {
+                return null;
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        vaultService.close();
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void shareSavedContentWithinFileTimeResolution() throws IOException {
+        VaultManager reader = createVaultManager(false);
+        VaultManager writer = createVaultManager(false);
+        writer.addSecret(KEY, "value-1");
+        assertEquals("value-1", fetch(reader));
+
+        // same size rewrite, the vault keeping its modification time as on a coarse grained file system
+        Path vaultFile = directory.resolve(".vault");
+        FileTime modified = Files.getLastModifiedTime(vaultFile);
+        long size = Files.size(vaultFile);
+        writer.addSecret(KEY, "value-2");
+        Files.setLastModifiedTime(vaultFile, modified);
+
+        assertEquals(size, Files.size(vaultFile));
+        assertEquals("value-2", fetch(reader));
+    }
+
+    @Test
+    public void shareJournaledContent() {
+        VaultManager reader = createVaultManager(true);
+        VaultManager writer = createVaultManager(true);
+        writer.addSecret(KEY, "value-1");
+        assertEquals("value-1", fetch(reader));
+
+        writer.addSecret(KEY, "value-2");
+
+        assertEquals("value-2", fetch(reader));
+    }
+
+    @Test
+    public void fingerprintPassphraseWithVaultKeys() {
+        String legacyFingerprint = createVaultManager(false).getVaultPassphraseFingerprint();
+        assertEquals(legacyFingerprint, createVaultManager(false).getVaultPassphraseFingerprint());
+
+        VaultManager vaultManager = createVaultManager(false, AesGcmVaultCipher.NAME);
+        vaultManager.addSecret("fingerprint", "value");
+        String fingerprint = vaultManager.getVaultPassphraseFingerprint();
+
+        assertEquals(64, fingerprint.length());
+        assertNotEquals(legacyFingerprint, fingerprint);
+        assertEquals(fingerprint, createVaultManager(false).getVaultPassphraseFingerprint());
+        // derived keys are not vault keys, whatever the identifier
+        assertFalse(vaultManager.getVaultSnapshot().getContent().keySet().stream()
+                                .filter(key -> !VaultManager.KDF_KEY.equals(key))
+                                .anyMatch(key -> IOManager.toHex(Base64.getDecoder().decode(key)).equals(fingerprint)));
+    }
+
+    @Test
+    public void shareLegacyCipherWithinBuild() {
+        VaultManager vaultManager = createVaultManager(false);
+        String fingerprint = vaultManager.getVaultPassphraseFingerprint();
+        VaultManager otherVaultManager = createVaultManager(false);
+
+        // the key behind the fingerprint is derived once per build
+        assertSame(vaultManager.getCipher(), otherVaultManager.getCipher());
+        assertEquals(fingerprint, otherVaultManager.getVaultPassphraseFingerprint());
+    }
+
+    private VaultManager createVaultManager(boolean isJournaled) {
+        return createVaultManager(isJournaled, null);
+    }
+
+    private VaultManager createVaultManager(boolean isJournaled, String encryption) {
+        VaultConfiguration configuration = new VaultConfiguration(directory.toFile());
+        configuration.vaultJournal = isJournaled;
+        configuration.vaultEncryption = encryption;
+        configuration.setVaultService(vaultService);
+        configuration.init(true);
+        return configuration.getVaultManager();
+    }
+
+    private static String fetch(VaultManager vaultManager) {
+        return vaultManager.getSecretBackend().fetch(Collections.singleton(KEY), null).get(KEY);
+    }
+}
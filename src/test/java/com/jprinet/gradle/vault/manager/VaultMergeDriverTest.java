@@ -0,0 +1,123 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VaultMergeDriverTest {
+
+    private final IOManager ioManager = new IOManager();
+    private final TextVaultFormat format = new TextVaultFormat(ioManager);
+    private final VaultMergeDriver mergeDriver = new VaultMergeDriver(ioManager);
+
+    private Path directory;
+    private String ancestorFile;
+    private String currentFile;
+    private String otherFile;
+    private Map<String, String> ancestor;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vault-test");
+        ancestorFile = directory.resolve("ancestor").toString();
+        currentFile = directory.resolve("current").toString();
+        otherFile = directory.resolve("other").toString();
+
+        ancestor = new HashMap<>();
+        ancestor.put("a", "1");
+        ancestor.put("b", "2");
+        ancestor.put("c", "3");
+        format.write(ancestorFile, ancestor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void mergeEntriesChangedOnOneSide() {
+        Map<String, String> current = new HashMap<>(ancestor);
+        current.put("a", "1-current");
+        current.put("d", "4");
+        Map<String, String> other = new HashMap<>(ancestor);
+        other.put("b", "2-other");
+        other.remove("c");
+
+        assertTrue(merge(current, other));
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "1-current");
+        expected.put("b", "2-other");
+        expected.put("d", "4");
+        assertEquals(expected, format.read(currentFile));
+    }
+
+    @Test
+    public void keepCurrentValueOfEntryChangedOnBothSides() {
+        Map<String, String> current = new HashMap<>(ancestor);
+        current.put("a", "1-current");
+        Map<String, String> other = new HashMap<>(ancestor);
+        other.put("a", "1-other");
+        other.put("b", "2-other");
+
+        assertFalse(merge(current, other));
+
+        Map<String, String> expected = new HashMap<>(ancestor);
+        expected.put("a", "1-current");
+        expected.put("b", "2-other");
+        assertEquals(expected, format.read(currentFile));
+    }
+
+    @Test
+    public void reportEntryDeletedOnOneSideAndChangedOnTheOther() {
+        Map<String, String> current = new HashMap<>(ancestor);
+        current.remove("a");
+        Map<String, String> other = new HashMap<>(ancestor);
+        other.put("a", "1-other");
+
+        assertFalse(merge(current, other));
+
+        Map<String, String> expected = new HashMap<>(ancestor);
+        expected.remove("a");
+        assertEquals(expected, format.read(currentFile));
+    }
+
+    @Test
+    public void mergeVaultsAddedOnBothSides() throws IOException {
+        Files.write(directory.resolve("ancestor"), new byte[0]);
+
+        assertTrue(merge(Collections.singletonMap("a", "1"), Collections.singletonMap("b", "2")));
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+        assertEquals(expected, format.read(currentFile));
+    }
+
+    @Test
+    public void detectPendingJournal() {
+        String vaultFile = directory.resolve(".vault").toString();
+        assertFalse(mergeDriver.hasJournal(vaultFile));
+
+        new VaultJournal(ioManager, vaultFile).append(Collections.singletonMap("a", "1"));
+
+        assertTrue(mergeDriver.hasJournal(vaultFile));
+    }
+
+    private boolean merge(Map<String, String> current, Map<String, String> other) {
+        format.write(currentFile, current);
+        format.write(otherFile, other);
+        return mergeDriver.merge(ancestorFile, currentFile, otherFile);
+    }
+}
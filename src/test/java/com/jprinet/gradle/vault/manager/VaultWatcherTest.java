@@ -0,0 +1,72 @@
+package com.jprinet.gradle.vault.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VaultWatcherTest {
+
+    private static final String KEY = "vault.key";
+    private static final long TIMEOUT_MS = 10_000;
+
+    private Path directory;
+    private Path template;
+    private VaultWatcher watcher;
+    private Thread watchThread;
+
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        directory = TestVaults.createDirectory();
+        template = Files.createDirectories(directory.resolve("build/app/conf")).resolve("app.properties");
+        Files.write(template, Collections.singletonList("key=@@" + KEY + "@@"));
+        TestVaults.createVault(directory);
+        TestVaults.createConfiguration(directory).getVaultManager().addSecret(KEY, "value");
+
+        watcher = new VaultWatcher(TestVaults.createConfiguration(directory));
+        watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        await(() -> watcher.getProcessedResources() == 1);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        watchThread.interrupt();
+        watchThread.join(TIMEOUT_MS);
+        TestVaults.delete(directory);
+    }
+
+    @Test
+    public void processSavedTemplateOnce() throws IOException, InterruptedException {
+        Files.write(template, Collections.singletonList("saved=@@" + KEY + "@@"));
+
+        await(() -> readTemplate().equals(Collections.singletonList("saved=value")));
+        // the events of the watcher's own write are ignored
+        Thread.sleep(1_000);
+        assertEquals(2, watcher.getProcessedResources());
+    }
+
+    private List<String> readTemplate() {
+        try {
+            return Files.readAllLines(template);
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean(), "condition not met in time");
+    }
+}